@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Сборка ETag из счетчиков версий. Счетчики сбрасываются при перезапуске,
+ * поэтому в каждый ETag входит метка запуска приложения.
+ */
+final class ETags {
+    private static final String BOOT_STAMP = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    private ETags() {
+    }
+
+    static String of(Object... parts) {
+        return Arrays.stream(parts).map(String::valueOf).collect(Collectors.joining("-", "\"" + BOOT_STAMP + "-", "\""));
+    }
+}
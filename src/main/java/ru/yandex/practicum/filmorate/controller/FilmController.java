@@ -1,24 +1,33 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.FilmImportResultDto;
+import ru.yandex.practicum.filmorate.dto.LikeImportResultDto;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.mappers.film.FilmMapper;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.requests.CreateFilmRequest;
+import ru.yandex.practicum.filmorate.service.genre.GenreService;
 import ru.yandex.practicum.filmorate.service.mpa.MpaService;
+import ru.yandex.practicum.filmorate.service.film.FilmImportService;
 import ru.yandex.practicum.filmorate.service.film.FilmService;
-import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.service.film.LikeImportService;
 
 import javax.validation.constraints.Positive;
-import java.util.HashSet;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 import static ru.yandex.practicum.filmorate.mappers.film.FilmMapper.mapToFilmDto;
@@ -28,56 +37,99 @@ import static ru.yandex.practicum.filmorate.mappers.film.FilmMapper.mapToFilmDto
 @Validated
 @RequiredArgsConstructor
 public class FilmController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CSV = "text/csv";
+    // таймаут асинхронной обработки 0 - без ограничения: выгрузка всего каталога может идти долго
+    private static final long STREAM_NO_TIMEOUT = 0;
     private final FilmService filmService;
+    private final FilmImportService filmImportService;
+    private final LikeImportService likeImportService;
     private final MpaService mpaService;
-    private final GenreStorage genreStorage;
+    private final GenreService genreService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping
-    public List<FilmDto> findAll() {
-        return this.filmService.getFilms().stream().map(FilmMapper::mapToFilmDto).collect(Collectors.toList());
+    public ResponseEntity<List<FilmDto>> findAll(@RequestParam(required = false) Long after,
+                                                 @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(this.filmService.getFilms().stream().map(FilmMapper::mapToFilmDto).collect(Collectors.toList()));
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        List<Film> page = this.filmService.getFilmsPage(after == null ? 0 : after, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == pageSize) {
+            // страница заполнена целиком - дальше могут быть еще фильмы
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.getLast().getId()));
+        }
+        return response.body(page.stream().map(FilmMapper::mapToFilmDto).collect(Collectors.toList()));
+    }
+
+    /**
+     * Выгрузка всего каталога в формате NDJSON: фильмы пишутся в ответ по одному по мере чтения из хранилища.
+     * Таймаут снят только у этой выгрузки, остальные асинхронные запросы живут со стандартным.
+     */
+    @GetMapping(value = "stream", produces = NDJSON)
+    public WebAsyncTask<Void> streamAll(HttpServletResponse response) {
+        return new WebAsyncTask<>(STREAM_NO_TIMEOUT, () -> {
+            response.setContentType(NDJSON);
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+                generator.setRootValueSeparator(null);
+                filmService.forEachFilm(film -> {
+                    try {
+                        generator.writeObject(mapToFilmDto(film));
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            return null;
+        });
     }
 
     @PostMapping
     public FilmDto addFilm(@RequestBody CreateFilmRequest request) {
-        Film film = new Film();
-        film.setName(request.getName());
-        film.setDescription(request.getDescription());
-        film.setReleaseDate(request.getReleaseDate());
-        film.setDuration(request.getDuration());
-
         if (!CollectionUtils.isEmpty(request.getGenres())) {
             request.getGenres().forEach(genreRequest -> {
-                genreStorage.ensureGenreExists(genreRequest.getId());
+                genreService.ensureGenreExists(genreRequest.getId());
             });
         }
 
         if (request.getMpa() != null) {
             mpaService.ensureMpaRatingExists(request.getMpa().getId());
-            MpaRating mpaRating = new MpaRating();
-            mpaRating.setId(request.getMpa().getId());
-            film.setMpaRating(mpaRating);
-        }
-
-        if (request.getGenres() == null) {
-            film.setGenres(List.of());
-        } else {
-            Set<Integer> ids = new HashSet<>();
-            film.setGenres(request.getGenres().stream().filter(genreRequest -> {
-                if (ids.contains(genreRequest.getId())) {
-                    return false;
-                }
-                ids.add(genreRequest.getId());
-                return true;
-            }).map(genreRequest -> {
-                Genre genre = new Genre();
-                genre.setId(genreRequest.getId());
-                return genre;
-            }).collect(Collectors.toList()));
         }
 
+        Film film = FilmMapper.mapToFilm(request);
         return mapToFilmDto(this.filmService.createFilm(film));
     }
 
+    /**
+     * Массовая загрузка фильмов из NDJSON: по одному объекту в формате POST /films на строку.
+     */
+    @PostMapping(value = "import", consumes = NDJSON)
+    public FilmImportResultDto importFilmsFromNdjson(InputStream body) throws IOException {
+        return filmImportService.importFilms(body, FilmImportService.Format.NDJSON);
+    }
+
+    /**
+     * Массовая загрузка фильмов из CSV с заголовком name,description,releaseDate,duration,mpa,genres
+     * (жанры перечисляются через "|").
+     */
+    @PostMapping(value = "import", consumes = CSV)
+    public FilmImportResultDto importFilmsFromCsv(InputStream body) throws IOException {
+        return filmImportService.importFilms(body, FilmImportService.Format.CSV);
+    }
+
+    /**
+     * Массовая загрузка событий лайков из NDJSON: {"filmId": 1, "userId": 2, "op": "add" | "remove"} на строку.
+     */
+    @PostMapping(value = "likes/bulk", consumes = NDJSON)
+    public LikeImportResultDto importLikes(InputStream body) throws IOException {
+        return likeImportService.importLikes(body);
+    }
+
     @PutMapping
     public FilmDto updateFilm(@RequestBody Film film) {
         return mapToFilmDto(this.filmService.update(film));
@@ -89,7 +141,13 @@ public class FilmController {
     }
 
     @GetMapping("{id}")
-    public FilmDto getFilm(@PathVariable long id) {
+    public FilmDto getFilm(@PathVariable long id, WebRequest webRequest) {
+        // версия берется из памяти, и при совпадении ETag отвечаем 304, не обращаясь к хранилищу вовсе;
+        // существование проверяет только чтение фильма. Устаревший ETag удаленного фильма не совпадет:
+        // в нем метка запуска, а удаление и создание сдвигают версию
+        if (webRequest.checkNotModified(ETags.of("f", id, filmService.getFilmVersion(id)))) {
+            return null;
+        }
         Film film = this.filmService.getFilm(id);
         return mapToFilmDto(film);
     }
@@ -108,11 +166,15 @@ public class FilmController {
     public List<FilmDto> getPopularFilms(
             @RequestParam(name = "count", defaultValue = "10")
             @Positive(message = "count не может быть меньше 0")
-            Integer count) {
+            Integer count,
+            WebRequest webRequest) {
         if (count < 0) {
             throw new ValidationException("Параметр count не может быть меньше 0");
             //аннотации @Positive и @Validation не работают
         }
+        if (webRequest.checkNotModified(ETags.of("popular", count, filmService.getPopularityEpoch()))) {
+            return null;
+        }
         return filmService.popularFilms(count)
                 .stream()
                 .map(FilmMapper::mapToFilmDto)
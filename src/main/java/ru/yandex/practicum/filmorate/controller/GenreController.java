@@ -5,6 +5,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.dto.GenreDto;
 import ru.yandex.practicum.filmorate.mappers.genre.GenreMapper;
 import ru.yandex.practicum.filmorate.model.Genre;
@@ -22,12 +23,18 @@ public class GenreController {
     private final GenreService genreService;
 
     @GetMapping
-    public List<GenreDto> getAll() {
+    public List<GenreDto> getAll(WebRequest webRequest) {
+        if (webRequest.checkNotModified(ETags.of("genres", this.genreService.getVersion()))) {
+            return null;
+        }
         return this.genreService.getAll().stream().map(GenreMapper::mapGenreToDto).collect(Collectors.toList());
     }
 
     @GetMapping("{id}")
-    public GenreDto getGenre(@PathVariable int id) {
+    public GenreDto getGenre(@PathVariable int id, WebRequest webRequest) {
+        if (webRequest.checkNotModified(ETags.of("genres", id, this.genreService.getVersion()))) {
+            return null;
+        }
         Genre genre = this.genreService.getGenre(id);
         return mapGenreToDto(genre);
     }
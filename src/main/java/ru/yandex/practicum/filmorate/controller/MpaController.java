@@ -5,6 +5,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.dto.MpaRatingDto;
 import ru.yandex.practicum.filmorate.mappers.mpa.MpaMapper;
 import ru.yandex.practicum.filmorate.model.MpaRating;
@@ -22,12 +23,18 @@ public class MpaController {
     private final MpaService mpaService;
 
     @GetMapping
-    public List<MpaRatingDto> getAll() {
+    public List<MpaRatingDto> getAll(WebRequest webRequest) {
+        if (webRequest.checkNotModified(ETags.of("mpa", this.mpaService.getVersion()))) {
+            return null;
+        }
         return this.mpaService.getAll().stream().map(MpaMapper::mapMpaToDto).collect(Collectors.toList());
     }
 
     @GetMapping("{id}")
-    public MpaRatingDto getMpaRating(@PathVariable int id) {
+    public MpaRatingDto getMpaRating(@PathVariable int id, WebRequest webRequest) {
+        if (webRequest.checkNotModified(ETags.of("mpa", id, this.mpaService.getVersion()))) {
+            return null;
+        }
         MpaRating mpaRating = this.mpaService.getMpaRating(id);
         return mapMpaToDto(mpaRating);
     }
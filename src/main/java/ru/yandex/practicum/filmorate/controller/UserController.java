@@ -1,11 +1,15 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.dto.FilmDto;
 import ru.yandex.practicum.filmorate.dto.UserDto;
+import ru.yandex.practicum.filmorate.mappers.film.FilmMapper;
 import ru.yandex.practicum.filmorate.mappers.user.UserMapper;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.requests.UpdateUserRequest;
 import ru.yandex.practicum.filmorate.requests.CreateUserRequest;
+import ru.yandex.practicum.filmorate.service.film.FilmService;
 import ru.yandex.practicum.filmorate.service.user.UserService;
 
 import java.util.List;
@@ -15,16 +19,31 @@ import static ru.yandex.practicum.filmorate.mappers.user.UserMapper.mapToUserDto
 @RestController
 @RequestMapping("/users")
 public class UserController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_PAGE_SIZE = 100;
     private final UserService userService;
+    private final FilmService filmService;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, FilmService filmService) {
         this.userService = userService;
+        this.filmService = filmService;
     }
 
     @GetMapping
-    public List<UserDto> findAll() {
-        return userService.getUsers().stream().map(UserMapper::mapToUserDto)
-                .collect(Collectors.toList());
+    public ResponseEntity<List<UserDto>> findAll(@RequestParam(required = false) Long after,
+                                                 @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(userService.getUsers().stream().map(UserMapper::mapToUserDto)
+                    .collect(Collectors.toList()));
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        List<User> page = userService.getUsersPage(after == null ? 0 : after, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == pageSize) {
+            // страница заполнена целиком - дальше могут быть еще пользователи
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.getLast().getId()));
+        }
+        return response.body(page.stream().map(UserMapper::mapToUserDto).collect(Collectors.toList()));
     }
 
     @PostMapping
@@ -45,6 +64,7 @@ public class UserController {
         user.setName(request.getName());
         user.setEmail(request.getEmail());
         user.setBirthday(request.getBirthday());
+        user.setVersion(request.getVersion());
         User updatedUser = userService.updateUser(user);
         return mapToUserDto(updatedUser);
     }
@@ -86,4 +106,31 @@ public class UserController {
                 .map(UserMapper::mapToUserDto)
                 .collect(Collectors.toList());
     }
+
+    @GetMapping("{id}/recommendations")
+    public List<UserDto> getRecommendations(@PathVariable long id,
+                                            @RequestParam(defaultValue = "10") int limit) {
+        return userService.getRecommendations(id, limit)
+                .stream()
+                .map(UserMapper::mapToUserDto)
+                .collect(Collectors.toList());
+    }
+
+    @GetMapping("{id}/recommended-films")
+    public List<FilmDto> getRecommendedFilms(@PathVariable long id,
+                                             @RequestParam(defaultValue = "10") int limit) {
+        return filmService.recommendFilms(id, limit)
+                .stream()
+                .map(FilmMapper::mapToFilmDto)
+                .collect(Collectors.toList());
+    }
+
+    @GetMapping("{id}/similar")
+    public List<UserDto> getSimilarUsers(@PathVariable long id,
+                                         @RequestParam(defaultValue = "10") int limit) {
+        return userService.getSimilarUsers(id, limit)
+                .stream()
+                .map(UserMapper::mapToUserDto)
+                .collect(Collectors.toList());
+    }
 }
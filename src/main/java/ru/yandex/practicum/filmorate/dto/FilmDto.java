@@ -19,4 +19,5 @@ public class FilmDto {
     List<GenreDto> genres;
     @JsonProperty("mpa")
     MpaRatingDto mpaRating;
+    long version;
 }
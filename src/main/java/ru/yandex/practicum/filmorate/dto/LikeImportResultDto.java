@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class LikeImportResultDto {
+    long received;
+    long duplicates;
+    long invalid;
+    long added;
+    long removed;
+    List<LikeImportErrorDto> errors = new ArrayList<>();
+}
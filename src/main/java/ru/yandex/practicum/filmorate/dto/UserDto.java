@@ -14,4 +14,5 @@ public class UserDto {
     String login;
     String name;
     LocalDate birthday;
+    long version;
 }
@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.exception;
+
+/**
+ * Запись изменена другим запросом: версия в хранилище уже не та, с которой начиналось обновление.
+ * В ответ превращается в 409 в {@link ru.yandex.practicum.filmorate.controller.ErrorHandler}.
+ */
+public class OptimisticLockException extends RuntimeException {
+    public OptimisticLockException(String message) {
+        super(message);
+    }
+}
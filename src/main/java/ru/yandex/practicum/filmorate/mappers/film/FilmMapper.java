@@ -6,7 +6,13 @@ import org.springframework.util.CollectionUtils;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
 import ru.yandex.practicum.filmorate.mappers.genre.GenreMapper;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.requests.CreateFilmRequest;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static ru.yandex.practicum.filmorate.mappers.mpa.MpaMapper.mapMpaToDto;
@@ -26,9 +32,38 @@ public class FilmMapper {
         }
 
         dto.setMpaRating(mapMpaToDto(film.getMpaRating()));
+        dto.setVersion(film.getVersion());
         return dto;
     }
 
+    public static Film mapToFilm(CreateFilmRequest request) {
+        Film film = new Film();
+        film.setName(request.getName());
+        film.setDescription(request.getDescription());
+        film.setReleaseDate(request.getReleaseDate());
+        film.setDuration(request.getDuration());
+
+        if (request.getMpa() != null) {
+            MpaRating mpaRating = new MpaRating();
+            mpaRating.setId(request.getMpa().getId());
+            film.setMpaRating(mpaRating);
+        }
+
+        if (request.getGenres() == null) {
+            film.setGenres(List.of());
+        } else {
+            Set<Integer> ids = new HashSet<>();
+            film.setGenres(request.getGenres().stream()
+                    .filter(genreRequest -> ids.add(genreRequest.getId()))
+                    .map(genreRequest -> {
+                        Genre genre = new Genre();
+                        genre.setId(genreRequest.getId());
+                        return genre;
+                    }).collect(Collectors.toList()));
+        }
+        return film;
+    }
+
     public static Film mapToFilm(FilmDto dto) {
         Film film = new Film();
         film.setId(dto.getId());
@@ -1,15 +1,21 @@
 package ru.yandex.practicum.filmorate.mappers.film;
 
+import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
 @Component
+@RequiredArgsConstructor
 public class FilmRowMapper implements RowMapper<Film> {
+    // название рейтинга берем из справочника в памяти, а не join-ом с MPA_RATING
+    private final MpaStorage mpaStorage;
+
     @Override
     public Film mapRow(ResultSet resultSet, int rowNum) throws SQLException {
         Film film = new Film();
@@ -18,10 +24,10 @@ public class FilmRowMapper implements RowMapper<Film> {
         film.setDescription(resultSet.getString("description"));
         film.setReleaseDate(resultSet.getDate("release_date").toLocalDate());
         film.setDuration(resultSet.getInt("duration"));
-        MpaRating mpaRating = new MpaRating();
-        mpaRating.setId(resultSet.getInt("mpa_rating_id"));
-        mpaRating.setName(resultSet.getString("mpa_rating_name"));
-        film.setMpaRating(mpaRating);
+        film.setLikeCount(resultSet.getLong("like_count"));
+        film.setVersion(resultSet.getLong("version"));
+        int mpaRatingId = resultSet.getInt("mpa_rating_id");
+        film.setMpaRating(resultSet.wasNull() ? new MpaRating() : mpaStorage.get(mpaRatingId));
         return film;
     }
 }
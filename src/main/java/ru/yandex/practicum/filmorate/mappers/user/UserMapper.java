@@ -14,6 +14,7 @@ public class UserMapper {
         dto.setEmail(user.getEmail());
         dto.setBirthday(user.getBirthday());
         dto.setLogin(user.getLogin());
+        dto.setVersion(user.getVersion());
         return dto;
     }
 }
@@ -17,6 +17,7 @@ public class UserRowMapper implements RowMapper<User> {
         user.setEmail(resultSet.getString("email"));
         user.setBirthday(resultSet.getDate("birthdate").toLocalDate());
         user.setLogin(resultSet.getString("login"));
+        user.setVersion(resultSet.getLong("version"));
 
         return user;
     }
@@ -4,11 +4,11 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.experimental.FieldDefaults;
 import lombok.AccessLevel;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
 
 import java.time.LocalDate;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Film.
@@ -23,18 +23,47 @@ public class Film {
     int duration;
     List<Genre> genres;
     MpaRating mpaRating;
+    // версия для оптимистичной блокировки: растет при каждом обновлении, 0 - версия не указана
+    long version;
     @JsonIgnore
-    Set<Long> usersWhoLiked = new HashSet<>();
+    long likeCount;
+    // сами лайкнувшие нужны только хранилищу в памяти; из базы фильм читается без них,
+    // и наружу хранилища отдают только количество
+    @JsonIgnore
+    LongHashSet usersWhoLiked = new LongHashSet();
+
+    public boolean addUserWhoLiked(long id) {
+        if (!usersWhoLiked.add(id)) {
+            return false;
+        }
+        likeCount++;
+        return true;
+    }
 
-    public void addUserWhoLiked(long id) {
-        usersWhoLiked.add(id);
+    public boolean deleteUserWhoLiked(long id) {
+        if (!usersWhoLiked.remove(id)) {
+            return false;
+        }
+        likeCount--;
+        return true;
     }
 
-    public void deleteUserWhoLiked(long id) {
-        usersWhoLiked.remove(id);
+    public long countOfLikes() {
+        return likeCount;
     }
 
-    public int countOfLikes() {
-        return usersWhoLiked.size();
+    public Film copy() {
+        Film copy = new Film();
+        copy.setId(id);
+        copy.setName(name);
+        copy.setDescription(description);
+        copy.setReleaseDate(releaseDate);
+        copy.setDuration(duration);
+        copy.setGenres(genres == null ? null : new ArrayList<>(genres));
+        copy.setMpaRating(mpaRating);
+        copy.setVersion(version);
+        copy.setLikeCount(likeCount);
+        copy.setUsersWhoLiked(new LongHashSet(usersWhoLiked));
+        return copy;
     }
 }
@@ -4,10 +4,9 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
 
 import java.time.LocalDate;
-import java.util.HashSet;
-import java.util.Set;
 
 @Data
 @FieldDefaults(level = AccessLevel.PRIVATE)
@@ -17,8 +16,10 @@ public class User {
     String login;
     String name;
     LocalDate birthday;
+    // версия для оптимистичной блокировки: растет при каждом обновлении, 0 - версия не указана
+    long version;
     @JsonIgnore
-    Set<Long> friends = new HashSet<>();
+    LongHashSet friends = new LongHashSet();
 
     public void addFriend(long id) {
         friends.add(id);
@@ -27,4 +28,16 @@ public class User {
     public void deleteFriend(long id) {
         friends.remove(id);
     }
+
+    public User copy() {
+        User copy = new User();
+        copy.setId(id);
+        copy.setEmail(email);
+        copy.setLogin(login);
+        copy.setName(name);
+        copy.setBirthday(birthday);
+        copy.setVersion(version);
+        copy.setFriends(new LongHashSet(friends));
+        return copy;
+    }
 }
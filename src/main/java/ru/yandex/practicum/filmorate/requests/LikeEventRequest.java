@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.requests;
+
+import lombok.Data;
+
+@Data
+public class LikeEventRequest {
+    long filmId;
+    long userId;
+    String op;
+}
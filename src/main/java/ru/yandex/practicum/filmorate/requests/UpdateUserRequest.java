@@ -11,4 +11,5 @@ public class UpdateUserRequest {
     public String login;
     public String email;
     public LocalDate birthday;
+    public long version;
 }
@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.OptimisticLockException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Повтор обновлений, проигравших сравнение версий: каждая попытка заново читает запись и ее версию,
+ * между попытками - случайная пауза с экспоненциально растущим пределом. После maxAttempts попыток
+ * конфликт отдается клиенту как 409.
+ */
+@Component
+public class OptimisticRetry {
+    private static final Logger log = LoggerFactory.getLogger(OptimisticRetry.class);
+
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    public OptimisticRetry(@Value("${filmorate.optimistic-lock.max-attempts:10}") int maxAttempts,
+                           @Value("${filmorate.optimistic-lock.initial-backoff-ms:1}") long initialBackoffMs,
+                           @Value("${filmorate.optimistic-lock.max-backoff-ms:50}") long maxBackoffMs) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    public <T> T run(Supplier<T> attempt) {
+        long backoffMs = initialBackoffMs;
+        for (int i = 1; ; i++) {
+            try {
+                return attempt.get();
+            } catch (OptimisticLockException e) {
+                if (i >= maxAttempts) {
+                    throw e;
+                }
+                log.debug("Конфликт версий, попытка {} из {}: {}", i, maxAttempts, e.getMessage());
+                sleep(ThreadLocalRandom.current().nextLong(backoffMs + 1));
+                backoffMs = Math.min(backoffMs * 2, maxBackoffMs);
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OptimisticLockException("Повтор обновления прерван");
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dto.FilmImportErrorDto;
+import ru.yandex.practicum.filmorate.dto.FilmImportResultDto;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.mappers.film.FilmMapper;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.requests.CreateFilmRequest;
+import ru.yandex.practicum.filmorate.requests.GenreRequest;
+import ru.yandex.practicum.filmorate.requests.MpaRequest;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Массовая загрузка фильмов. Вход читается пачками по batchSize строк: каждая пачка разбирается
+ * и валидируется параллельно, а прошедшие проверку фильмы пишутся в хранилище одной пакетной операцией.
+ * Ошибки копятся по номерам строк и не прерывают загрузку остальных записей: ограничения колонок
+ * проверяются еще при разборе, повторы жанров схлопываются, а если пачка все же не записалась, ее записи
+ * сохраняются по одной, чтобы ошибкой отметить только плохие строки.
+ */
+@Service
+public class FilmImportService {
+    private static final Logger log = LoggerFactory.getLogger(FilmImportService.class);
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final String GENRES_SEPARATOR = "\\|";
+    // размеры колонок FILM.NAME и FILM.DESCRIPTION из schema.sql
+    private static final int MAX_NAME_LENGTH = 40;
+    private static final int MAX_DESCRIPTION_LENGTH = 100;
+
+    private final FilmService filmService;
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    public FilmImportService(FilmService filmService, GenreStorage genreStorage, MpaStorage mpaStorage,
+                             ObjectMapper objectMapper, @Value("${filmorate.import.batch-size:1000}") int batchSize) {
+        this.filmService = filmService;
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    public enum Format {
+        NDJSON,
+        CSV
+    }
+
+    public FilmImportResultDto importFilms(InputStream input, Format format) throws IOException {
+        // справочники читаем один раз на всю загрузку, а не на каждую запись
+        Set<Integer> genreIds = genreStorage.getAll().stream().map(Genre::getId).collect(Collectors.toSet());
+        Set<Integer> mpaIds = mpaStorage.getAll().stream().map(MpaRating::getId).collect(Collectors.toSet());
+        FilmImportResultDto result = new FilmImportResultDto();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            long lineNumber = 0;
+            Map<String, Integer> csvColumns = null;
+            if (format == Format.CSV) {
+                String header = reader.readLine();
+                lineNumber++;
+                if (header == null) {
+                    return result;
+                }
+                csvColumns = parseCsvHeader(header);
+            }
+
+            List<RawLine> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                batch.add(new RawLine(lineNumber, line));
+                if (batch.size() == batchSize) {
+                    importBatch(batch, format, csvColumns, genreIds, mpaIds, result);
+                    batch.clear();
+                }
+            }
+            importBatch(batch, format, csvColumns, genreIds, mpaIds, result);
+        }
+
+        log.info("Импорт фильмов завершен: загружено {}, с ошибками {}", result.getImported(), result.getFailed());
+        return result;
+    }
+
+    private void importBatch(List<RawLine> batch, Format format, Map<String, Integer> csvColumns,
+                             Set<Integer> genreIds, Set<Integer> mpaIds, FilmImportResultDto result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<ParsedLine> parsed = batch.parallelStream()
+                .map(rawLine -> parse(rawLine, format, csvColumns, genreIds, mpaIds))
+                .toList();
+
+        List<ParsedLine> valid = new ArrayList<>(parsed.size());
+        parsed.forEach(parsedLine -> {
+            if (parsedLine.error() == null) {
+                valid.add(parsedLine);
+            } else {
+                addError(result, parsedLine.line(), parsedLine.error());
+            }
+        });
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        try {
+            filmService.createFilms(valid.stream().map(ParsedLine::film).toList());
+            result.setImported(result.getImported() + valid.size());
+        } catch (DataAccessException e) {
+            log.warn("Не удалось сохранить пачку фильмов со строки {}, сохраняем по одному: {}",
+                    valid.getFirst().line(), e.getMessage());
+            valid.forEach(parsedLine -> importOne(parsedLine, result));
+        }
+    }
+
+    private void importOne(ParsedLine parsedLine, FilmImportResultDto result) {
+        try {
+            filmService.createFilms(List.of(parsedLine.film()));
+            result.setImported(result.getImported() + 1);
+        } catch (DataAccessException e) {
+            addError(result, parsedLine.line(), "Ошибка сохранения: " + e.getMessage());
+        }
+    }
+
+    private ParsedLine parse(RawLine rawLine, Format format, Map<String, Integer> csvColumns,
+                             Set<Integer> genreIds, Set<Integer> mpaIds) {
+        try {
+            CreateFilmRequest request = format == Format.NDJSON
+                    ? objectMapper.readValue(rawLine.text(), CreateFilmRequest.class)
+                    : parseCsvRecord(rawLine.text(), csvColumns);
+            if (request.getName() == null || request.getReleaseDate() == null) {
+                throw new ValidationException("Не заполнены название или дата выхода фильма");
+            }
+            if (request.getName().length() > MAX_NAME_LENGTH) {
+                throw new ValidationException(String.format("Название длиннее %d символов", MAX_NAME_LENGTH));
+            }
+            if (request.getDescription() != null && request.getDescription().length() > MAX_DESCRIPTION_LENGTH) {
+                throw new ValidationException(String.format("Описание длиннее %d символов", MAX_DESCRIPTION_LENGTH));
+            }
+            if (request.getMpa() != null && !mpaIds.contains(request.getMpa().getId())) {
+                throw new ValidationException(String.format("Не найден mpa-рейтинг с id=%d", request.getMpa().getId()));
+            }
+            if (request.getGenres() != null) {
+                request.getGenres().stream()
+                        .filter(genre -> !genreIds.contains(genre.getId()))
+                        .findFirst()
+                        .ifPresent(genre -> {
+                            throw new ValidationException(String.format("Не найден жанр с id=%d", genre.getId()));
+                        });
+            }
+            // повторы жанров убирает маппер, как и при создании фильма через API
+            Film film = FilmMapper.mapToFilm(request);
+            FilmService.checkFilmBeforeAddOrUpdate(film);
+            return new ParsedLine(rawLine.line(), film, null);
+        } catch (IOException | RuntimeException e) {
+            return new ParsedLine(rawLine.line(), null, e.getMessage());
+        }
+    }
+
+    private void addError(FilmImportResultDto result, long line, String message) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getErrors().size() < MAX_REPORTED_ERRORS) {
+            result.getErrors().add(new FilmImportErrorDto(line, message));
+        }
+    }
+
+    private static Map<String, Integer> parseCsvHeader(String header) {
+        List<String> columns = splitCsvLine(header);
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            indexes.put(columns.get(i).trim(), i);
+        }
+        if (!indexes.containsKey("name") || !indexes.containsKey("releaseDate")) {
+            throw new ValidationException("В заголовке CSV должны быть колонки name и releaseDate");
+        }
+        return indexes;
+    }
+
+    private static CreateFilmRequest parseCsvRecord(String line, Map<String, Integer> columns) {
+        List<String> values = splitCsvLine(line);
+        CreateFilmRequest request = new CreateFilmRequest();
+        request.setName(column(values, columns, "name"));
+        request.setDescription(column(values, columns, "description"));
+        request.setReleaseDate(LocalDate.parse(column(values, columns, "releaseDate")));
+
+        String duration = column(values, columns, "duration");
+        if (duration != null) {
+            request.setDuration(Integer.parseInt(duration));
+        }
+
+        String mpa = column(values, columns, "mpa");
+        if (mpa != null) {
+            MpaRequest mpaRequest = new MpaRequest();
+            mpaRequest.setId(Integer.parseInt(mpa));
+            request.setMpa(mpaRequest);
+        }
+
+        String genres = column(values, columns, "genres");
+        if (genres != null) {
+            request.setGenres(Arrays.stream(genres.split(GENRES_SEPARATOR))
+                    .map(String::trim)
+                    .filter(id -> !id.isEmpty())
+                    .map(id -> {
+                        GenreRequest genreRequest = new GenreRequest();
+                        genreRequest.setId(Integer.parseInt(id));
+                        return genreRequest;
+                    }).toList());
+        }
+        return request;
+    }
+
+    private static String column(List<String> values, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= values.size() || values.get(index).isEmpty()) {
+            return null;
+        }
+        return values.get(index);
+    }
+
+    /**
+     * Разбивает строку CSV на значения с учетом кавычек (RFC 4180, без переносов строк внутри значений).
+     */
+    private static List<String> splitCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        values.add(current.toString());
+        return values;
+    }
+
+    private record RawLine(long line, String text) {
+    }
+
+    private record ParsedLine(long line, Film film, String error) {
+    }
+}
@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Рейтинг фильмов по количеству лайков в памяти приложения.
+ * Загружается из FILM_LIKES при старте и дальше обновляется сервисом на каждый лайк,
+ * поэтому топ-K отдается за O(K + log N) без обращения к базе.
+ */
+@Component
+public class FilmPopularityIndex {
+    private static final Logger log = LoggerFactory.getLogger(FilmPopularityIndex.class);
+    private static final Comparator<Entry> BY_LIKES_DESC = Comparator.comparingLong(Entry::likes).reversed()
+            .thenComparingLong(Entry::filmId);
+
+    private final FilmStorage filmStorage;
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>(BY_LIKES_DESC);
+    private final ConcurrentHashMap<Long, Long> likesByFilm = new ConcurrentHashMap<>();
+
+    public FilmPopularityIndex(FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    @PostConstruct
+    public void load() {
+        ranking.clear();
+        likesByFilm.clear();
+        filmStorage.getLikeCounts().forEach(this::setLikes);
+        log.info("Индекс популярности загружен, фильмов: {}", likesByFilm.size());
+    }
+
+    /**
+     * Добавляет новый фильм без лайков. Фильм виден в хранилище раньше, чем попадает сюда, и лайк,
+     * успевший прийти в этот промежуток, уже заведет запись через {@link #changeLikes} - ее не затираем.
+     */
+    public void addFilm(long filmId) {
+        likesByFilm.computeIfAbsent(filmId, id -> {
+            ranking.add(new Entry(0L, id));
+            return 0L;
+        });
+    }
+
+    public void removeFilm(long filmId) {
+        likesByFilm.computeIfPresent(filmId, (id, likes) -> {
+            ranking.remove(new Entry(likes, id));
+            return null;
+        });
+    }
+
+    /**
+     * Меняет число лайков фильма на delta; фильм, которого еще нет в индексе, считается без лайков.
+     * Удаленный фильм сюда не попадет: лайк удаленному фильму отклоняет хранилище.
+     */
+    public void changeLikes(long filmId, long delta) {
+        likesByFilm.compute(filmId, (id, likes) -> {
+            long current = likes == null ? 0 : likes;
+            if (likes != null) {
+                ranking.remove(new Entry(current, id));
+            }
+            ranking.add(new Entry(current + delta, id));
+            return current + delta;
+        });
+    }
+
+    public void setLikes(long filmId, long likes) {
+        likesByFilm.compute(filmId, (id, oldLikes) -> {
+            if (oldLikes != null) {
+                ranking.remove(new Entry(oldLikes, id));
+            }
+            ranking.add(new Entry(likes, id));
+            return likes;
+        });
+    }
+
+    /**
+     * Возвращает id самых популярных фильмов, от большего числа лайков к меньшему,
+     * при равенстве - по возрастанию id.
+     */
+    public List<Long> top(int count) {
+        List<Long> result = new ArrayList<>(Math.min(count, likesByFilm.size()));
+        Iterator<Entry> iterator = ranking.iterator();
+        while (result.size() < count && iterator.hasNext()) {
+            result.add(iterator.next().filmId());
+        }
+        return result;
+    }
+
+    private record Entry(long likes, long filmId) {
+    }
+}
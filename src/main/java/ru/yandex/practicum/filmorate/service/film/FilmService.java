@@ -2,51 +2,142 @@ package ru.yandex.practicum.filmorate.service.film;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLikes;
 import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.service.OptimisticRetry;
+import ru.yandex.practicum.filmorate.storage.film.AppliedLikes;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+import ru.yandex.practicum.filmorate.util.StripedLocks;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class FilmService {
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmVersions versions;
+    private final LikeMatrix likeMatrix;
+    private final UserSimilarityIndex similarityIndex;
+    private final OptimisticRetry optimisticRetry;
+    // лайк пишется в хранилище, матрицу лайков и индекс похожих пользователей под монитором пользователя,
+    // чтобы они менялись в том же порядке, что и хранилище; пакетные лайки и удаление фильма берут write-блокировку,
+    // которая исключает одиночные лайки на время всей операции
+    private final ReentrantReadWriteLock likesLock = new ReentrantReadWriteLock();
+    private final StripedLocks likeLocks = new StripedLocks(64);
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_RECOMMENDATIONS = 100;
     private static final LocalDate MIN_RELEASE_DATE = LocalDate.of(1895, 12, 28);
     private static final Logger log = LoggerFactory.getLogger(FilmService.class);
 
-    public FilmService(@Qualifier("RealDbFilmStorage") FilmStorage filmStorage, @Qualifier("RealDbUserStorage") UserStorage userStorage) {
+    public FilmService(FilmStorage filmStorage, UserStorage userStorage,
+                       FilmPopularityIndex popularityIndex, FilmVersions versions, LikeMatrix likeMatrix,
+                       UserSimilarityIndex similarityIndex, OptimisticRetry optimisticRetry) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.popularityIndex = popularityIndex;
+        this.versions = versions;
+        this.likeMatrix = likeMatrix;
+        this.similarityIndex = similarityIndex;
+        this.optimisticRetry = optimisticRetry;
     }
 
     public void addLikeToFilm(long filmId, long userId) {
-        Film film = filmStorage.getFilm(filmId);
+        filmStorage.ensureFilmExists(filmId);
         //Проверим что пользователь есть
         userStorage.ensureUserExists(userId);
-        film.addUserWhoLiked(userId);
-        filmStorage.update(film);
+        boolean added;
+        likesLock.readLock().lock();
+        try {
+            synchronized (likeLocks.forKey(userId)) {
+                added = filmStorage.addLike(filmId, userId);
+                if (added) {
+                    likeMatrix.addLike(filmId, userId);
+                    similarityIndex.likeAdded(userId, filmId);
+                    // под read-блокировкой: пакетный setLikes не может вклиниться между лайком и его учетом
+                    popularityIndex.changeLikes(filmId, 1);
+                }
+            }
+        } finally {
+            likesLock.readLock().unlock();
+        }
+        if (added) {
+            versions.popularityChanged();
+        }
     }
 
     public void removeLikeToFilm(long filmId, long userId) {
-        Film film = filmStorage.getFilm(filmId);
+        filmStorage.ensureFilmExists(filmId);
         //Проверим что пользователь есть
         userStorage.ensureUserExists(userId);
-        film.deleteUserWhoLiked(userId);
-        filmStorage.update(film);
+        boolean removed;
+        likesLock.readLock().lock();
+        try {
+            synchronized (likeLocks.forKey(userId)) {
+                removed = filmStorage.removeLike(filmId, userId);
+                if (removed) {
+                    likeMatrix.removeLike(filmId, userId);
+                    similarityIndex.likesChanged(userId);
+                    popularityIndex.changeLikes(filmId, -1);
+                }
+            }
+        } finally {
+            likesLock.readLock().unlock();
+        }
+        if (removed) {
+            versions.popularityChanged();
+        }
+    }
+
+    /**
+     * Пакетно применяет лайки, уже проверенные и очищенные от дублей, и обновляет рейтинг популярности.
+     *
+     * @return лайки, которые действительно поставлены и сняты
+     */
+    public AppliedLikes applyLikes(List<FilmLikes> added, List<FilmLikes> removed) {
+        AppliedLikes applied;
+        likesLock.writeLock().lock();
+        try {
+            applied = filmStorage.applyLikes(added, removed);
+            applied.likeCounts().forEach(popularityIndex::setLikes);
+            applied.added().forEach(like -> likeMatrix.addLike(like.getFilmId(), like.getUserId()));
+            applied.removed().forEach(like -> likeMatrix.removeLike(like.getFilmId(), like.getUserId()));
+            applied.added().forEach(like -> similarityIndex.likeAdded(like.getUserId(), like.getFilmId()));
+            applied.removed().stream().map(FilmLikes::getUserId).distinct().forEach(similarityIndex::likesChanged);
+        } finally {
+            likesLock.writeLock().unlock();
+        }
+        if (!applied.added().isEmpty() || !applied.removed().isEmpty()) {
+            versions.popularityChanged();
+        }
+        return applied;
     }
 
     public List<Film> popularFilms(int count) {
-        return filmStorage.getPopularFilms(count)
-                .stream().sorted((a, b) -> Integer.compare(b.countOfLikes(), a.countOfLikes()))
-                .collect(Collectors.toList());
+        // порядок уже задан индексом, хранилище только догружает фильмы по id
+        return filmStorage.getFilmsByIds(popularityIndex.top(count));
+    }
+
+    /**
+     * Рекомендует пользователю до limit фильмов, которые лайкали похожие на него пользователи.
+     */
+    public List<Film> recommendFilms(long userId, int limit) {
+        if (limit <= 0 || limit > MAX_RECOMMENDATIONS) {
+            throw new ValidationException(String.format("Параметр limit должен быть от 1 до %d", MAX_RECOMMENDATIONS));
+        }
+        userStorage.ensureUserExists(userId);
+        long[] filmIds = likeMatrix.recommend(userId, limit);
+        return filmStorage.getFilmsByIds(Arrays.stream(filmIds).boxed().toList());
     }
 
     public List<Film> getFilms() {
@@ -56,19 +147,80 @@ public class FilmService {
         }).collect(Collectors.toList());
     }
 
+    public List<Film> getFilmsPage(long afterId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException(String.format("Параметр limit должен быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        return filmStorage.getFilmsPage(afterId, limit);
+    }
+
+    public void forEachFilm(Consumer<Film> action) {
+        filmStorage.forEachFilm(action);
+    }
+
     public Film createFilm(Film film) {
         checkFilmBeforeAddOrUpdate(film);
-        return filmStorage.create(film);
+        Film created = filmStorage.create(film);
+        popularityIndex.addFilm(created.getId());
+        versions.filmChanged(created.getId());
+        return created;
+    }
+
+    /**
+     * Сохраняет пачку уже проверенных фильмов одной операцией хранилища.
+     */
+    public List<Film> createFilms(List<Film> films) {
+        List<Film> created = filmStorage.createAll(films);
+        created.forEach(film -> {
+            popularityIndex.addFilm(film.getId());
+            versions.filmChanged(film.getId());
+        });
+        return created;
     }
 
+    /**
+     * Обновляет фильм со сравнением версий. Если клиент передал версию, при ее расхождении с хранимой
+     * сразу возвращается конфликт; иначе обновление делается от текущей версии и при гонке повторяется.
+     */
     public Film update(Film film) {
         checkFilmBeforeAddOrUpdate(film);
-        filmStorage.ensureFilmExists(film.getId());
-        return filmStorage.update(film);
+        Film updated;
+        if (film.getVersion() != 0) {
+            updated = filmStorage.update(film);
+        } else {
+            updated = optimisticRetry.run(() -> {
+                film.setVersion(filmStorage.getFilm(film.getId()).getVersion());
+                return filmStorage.update(film);
+            });
+        }
+        versions.filmChanged(film.getId());
+        return updated;
     }
 
     public void delete(long id) {
-        filmStorage.delete(id);
+        likesLock.writeLock().lock();
+        try {
+            filmStorage.delete(id);
+            likeMatrix.removeFilm(id).forEach(similarityIndex::likesChanged);
+            popularityIndex.removeFilm(id);
+        } finally {
+            likesLock.writeLock().unlock();
+        }
+        versions.filmChanged(id);
+    }
+
+    /**
+     * ETag-версия фильма для условного GET /films/{id}.
+     */
+    public long getFilmVersion(long id) {
+        return versions.getFilmVersion(id);
+    }
+
+    /**
+     * ETag-версия выдачи популярных фильмов.
+     */
+    public long getPopularityEpoch() {
+        return versions.getPopularityEpoch();
     }
 
     public Film getFilm(long id) {
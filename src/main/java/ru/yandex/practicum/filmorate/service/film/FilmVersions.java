@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счетчики изменений для условных GET-запросов: у каждого фильма свой счетчик, плюс общая
+ * "эпоха популярности", которая растет при любом изменении, способном поменять выдачу /films/popular
+ * (лайки, создание, изменение и удаление фильмов). Счетчики живут только в памяти процесса.
+ */
+@Component
+public class FilmVersions {
+    private final ConcurrentHashMap<Long, AtomicLong> filmVersions = new ConcurrentHashMap<>();
+    private final AtomicLong popularityEpoch = new AtomicLong();
+
+    public long getFilmVersion(long filmId) {
+        AtomicLong version = filmVersions.get(filmId);
+        return version == null ? 0 : version.get();
+    }
+
+    public long getPopularityEpoch() {
+        return popularityEpoch.get();
+    }
+
+    /**
+     * Фильм изменился или удален - меняется и он сам, и выдача популярных.
+     */
+    public void filmChanged(long filmId) {
+        filmVersions.computeIfAbsent(filmId, id -> new AtomicLong()).incrementAndGet();
+        popularityEpoch.incrementAndGet();
+    }
+
+    /**
+     * Изменились лайки или состав каталога - меняется только выдача популярных.
+     */
+    public void popularityChanged() {
+        popularityEpoch.incrementAndGet();
+    }
+}
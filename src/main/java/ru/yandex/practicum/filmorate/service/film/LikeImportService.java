@@ -0,0 +1,165 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dto.LikeImportErrorDto;
+import ru.yandex.practicum.filmorate.dto.LikeImportResultDto;
+import ru.yandex.practicum.filmorate.model.FilmLikes;
+import ru.yandex.practicum.filmorate.requests.LikeEventRequest;
+import ru.yandex.practicum.filmorate.storage.film.AppliedLikes;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Массовая загрузка событий лайков (filmId, userId, op) из потока NDJSON.
+ * Поток читается построчно, и каждая строка разбирается отдельно: испорченная строка попадает в ошибки
+ * с номером, а загрузка продолжается. События обрабатываются пачками по batchSize: внутри пачки
+ * повторы по паре фильм-пользователь схлопываются (побеждает последнее событие), id проверяются
+ * одним запросом на пачку, а изменения пишутся пакетно. Поставленными и снятыми считаются только лайки,
+ * которые действительно изменили состояние.
+ */
+@Service
+public class LikeImportService {
+    private static final Logger log = LoggerFactory.getLogger(LikeImportService.class);
+    private static final String OP_ADD = "add";
+    private static final String OP_REMOVE = "remove";
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final FilmService filmService;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final ObjectReader eventReader;
+    private final int batchSize;
+
+    public LikeImportService(FilmService filmService,
+                             FilmStorage filmStorage,
+                             UserStorage userStorage,
+                             ObjectMapper objectMapper,
+                             @Value("${filmorate.likes.import-batch-size:100000}") int batchSize) {
+        this.filmService = filmService;
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.eventReader = objectMapper.readerFor(LikeEventRequest.class);
+        this.batchSize = batchSize;
+    }
+
+    public LikeImportResultDto importLikes(InputStream input) throws IOException {
+        LikeImportResultDto result = new LikeImportResultDto();
+        // ключ - пара фильм-пользователь, значение - последнее событие по ней
+        Map<LikeKey, LikeEvent> batch = new LinkedHashMap<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                result.setReceived(result.getReceived() + 1);
+                LikeEventRequest event;
+                try {
+                    event = eventReader.readValue(line);
+                } catch (IOException e) {
+                    addError(result, lineNumber, "Не удалось разобрать событие: " + e.getMessage());
+                    continue;
+                }
+                Boolean isAdd = parseOp(event.getOp());
+                if (isAdd == null) {
+                    addError(result, lineNumber, String.format("Неизвестная операция %s", event.getOp()));
+                    continue;
+                }
+                if (batch.put(new LikeKey(event.getFilmId(), event.getUserId()), new LikeEvent(lineNumber, isAdd)) != null) {
+                    result.setDuplicates(result.getDuplicates() + 1);
+                }
+                if (batch.size() == batchSize) {
+                    applyBatch(batch, result);
+                    batch.clear();
+                }
+            }
+        }
+        applyBatch(batch, result);
+
+        log.info("Загрузка лайков завершена: получено {}, дублей {}, некорректных {}, поставлено {}, снято {}",
+                result.getReceived(), result.getDuplicates(), result.getInvalid(), result.getAdded(), result.getRemoved());
+        return result;
+    }
+
+    private void applyBatch(Map<LikeKey, LikeEvent> batch, LikeImportResultDto result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Set<Long> filmIds = new HashSet<>();
+        Set<Long> userIds = new HashSet<>();
+        batch.keySet().forEach(key -> {
+            filmIds.add(key.filmId());
+            userIds.add(key.userId());
+        });
+        Set<Long> existingFilms = filmStorage.findExistingIds(filmIds);
+        Set<Long> existingUsers = userStorage.findExistingIds(userIds);
+
+        List<FilmLikes> added = new ArrayList<>();
+        List<FilmLikes> removed = new ArrayList<>();
+        batch.forEach((key, event) -> {
+            if (!existingFilms.contains(key.filmId())) {
+                addError(result, event.line(), String.format("Не найден фильм с id=%d", key.filmId()));
+                return;
+            }
+            if (!existingUsers.contains(key.userId())) {
+                addError(result, event.line(), String.format("Не найден пользователь с id=%d", key.userId()));
+                return;
+            }
+            FilmLikes like = new FilmLikes();
+            like.setFilmId(key.filmId());
+            like.setUserId(key.userId());
+            if (event.isAdd()) {
+                added.add(like);
+            } else {
+                removed.add(like);
+            }
+        });
+
+        AppliedLikes applied = filmService.applyLikes(added, removed);
+        result.setAdded(result.getAdded() + applied.added().size());
+        result.setRemoved(result.getRemoved() + applied.removed().size());
+    }
+
+    private static void addError(LikeImportResultDto result, long line, String message) {
+        result.setInvalid(result.getInvalid() + 1);
+        if (result.getErrors().size() < MAX_REPORTED_ERRORS) {
+            result.getErrors().add(new LikeImportErrorDto(line, message));
+        }
+    }
+
+    private static Boolean parseOp(String op) {
+        if (OP_ADD.equalsIgnoreCase(op)) {
+            return true;
+        }
+        if (OP_REMOVE.equalsIgnoreCase(op)) {
+            return false;
+        }
+        return null;
+    }
+
+    private record LikeKey(long filmId, long userId) {
+    }
+
+    private record LikeEvent(long line, boolean isAdd) {
+    }
+}
@@ -0,0 +1,246 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.stream.LongStream;
+
+/**
+ * Разреженная матрица лайков пользователь x фильм в памяти приложения: для каждого пользователя -
+ * множество лайкнутых фильмов, для каждого фильма - множество лайкнувших. Загружается из FILM_LIKES
+ * при старте и дальше обновляется сервисом на каждый лайк.
+ * <p>
+ * Рекомендации строятся коллаборативной фильтрацией: похожие пользователи - те, у кого больше всего
+ * общих лайков с данным, а рекомендуемые фильмы - лайкнутые ими и не лайкнутые им, с весом по числу
+ * общих лайков. Подсчет общих лайков для больших профилей распараллеливается через fork-join.
+ */
+@Component
+public class LikeMatrix {
+    private static final Logger log = LoggerFactory.getLogger(LikeMatrix.class);
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    private final FilmStorage filmStorage;
+    private final int maxSimilarUsers;
+    private final int maxLikersPerFilm;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, LongHashSet> filmsByUser = new HashMap<>();
+    private final Map<Long, LongHashSet> usersByFilm = new HashMap<>();
+
+    public LikeMatrix(FilmStorage filmStorage,
+                      @Value("${filmorate.film-recommendations.similar-users:50}") int maxSimilarUsers,
+                      @Value("${filmorate.film-recommendations.max-likers-per-film:10000}") int maxLikersPerFilm) {
+        this.filmStorage = filmStorage;
+        this.maxSimilarUsers = maxSimilarUsers;
+        this.maxLikersPerFilm = maxLikersPerFilm;
+    }
+
+    @PostConstruct
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            filmsByUser.clear();
+            usersByFilm.clear();
+            filmStorage.forEachLike(this::addLikeLocked);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Матрица лайков загружена: пользователей {}, фильмов {}", filmsByUser.size(), usersByFilm.size());
+    }
+
+    public void addLike(long filmId, long userId) {
+        lock.writeLock().lock();
+        try {
+            addLikeLocked(filmId, userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLike(long filmId, long userId) {
+        lock.writeLock().lock();
+        try {
+            remove(filmsByUser, userId, filmId);
+            remove(usersByFilm, filmId, userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Убирает фильм из матрицы.
+     *
+     * @return id пользователей, у которых был лайк этого фильма
+     */
+    public LongHashSet removeFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            LongHashSet users = usersByFilm.remove(filmId);
+            if (users == null) {
+                return new LongHashSet();
+            }
+            users.forEach(userId -> remove(filmsByUser, userId, filmId));
+            return users;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает копию множества фильмов, лайкнутых пользователем.
+     */
+    public LongHashSet getLikedFilms(long userId) {
+        lock.readLock().lock();
+        try {
+            LongHashSet liked = filmsByUser.get(userId);
+            return liked == null ? new LongHashSet() : new LongHashSet(liked);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Передает в action каждого пользователя с лайками и множество его фильмов (не копию - менять его нельзя).
+     */
+    public void forEachUser(BiConsumer<Long, LongHashSet> action) {
+        lock.readLock().lock();
+        try {
+            filmsByUser.forEach(action);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Считает точный коэффициент Жаккара лайков userId с каждым из others.
+     */
+    public double[] jaccard(long userId, long[] others) {
+        lock.readLock().lock();
+        try {
+            LongHashSet liked = filmsByUser.getOrDefault(userId, new LongHashSet());
+            double[] result = new double[others.length];
+            for (int i = 0; i < others.length; i++) {
+                LongHashSet otherLiked = filmsByUser.get(others[i]);
+                if (otherLiked == null || liked.isEmpty()) {
+                    continue;
+                }
+                int common = liked.size() <= otherLiked.size()
+                        ? countContained(liked, otherLiked) : countContained(otherLiked, liked);
+                result[i] = (double) common / (liked.size() + otherLiked.size() - common);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает до limit id рекомендованных пользователю фильмов, от большего веса к меньшему,
+     * при равенстве - по возрастанию id.
+     */
+    public long[] recommend(long userId, int limit) {
+        lock.readLock().lock();
+        try {
+            LongHashSet liked = filmsByUser.get(userId);
+            if (liked == null || liked.isEmpty()) {
+                return new long[0];
+            }
+
+            LongIntHashMap overlaps = countOverlaps(userId, liked.toArray());
+            long[][] similar = top(overlaps, maxSimilarUsers);
+
+            LongIntHashMap scores = new LongIntHashMap();
+            for (long[] neighbour : similar) {
+                int weight = (int) neighbour[1];
+                filmsByUser.get(neighbour[0]).forEach(filmId -> {
+                    if (!liked.contains(filmId)) {
+                        scores.addTo(filmId, weight);
+                    }
+                });
+            }
+            return Arrays.stream(top(scores, limit)).mapToLong(entry -> entry[0]).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Считает число общих лайков с userId для всех пользователей, у которых оно не нулевое.
+     * Фильмы делятся между потоками fork-join, каждый копит свой счетчик, затем счетчики сливаются.
+     * Вызывается под read-блокировкой, поэтому матрица во время подсчета не меняется.
+     */
+    private LongIntHashMap countOverlaps(long userId, long[] liked) {
+        LongStream films = Arrays.stream(liked);
+        if (liked.length >= PARALLEL_THRESHOLD) {
+            films = films.parallel();
+        }
+        return films.collect(LongIntHashMap::new, (overlaps, filmId) -> {
+            // у популярного фильма обход обрывается на maxLikersPerFilm лайкнувших, остальные не просматриваются
+            int[] visited = {0};
+            usersByFilm.get(filmId).forEachWhile(otherUserId -> {
+                if (otherUserId != userId) {
+                    overlaps.addTo(otherUserId, 1);
+                    visited[0]++;
+                }
+                return visited[0] < maxLikersPerFilm;
+            });
+        }, LongIntHashMap::addAll);
+    }
+
+    /**
+     * Возвращает до limit пар (id, значение) с наибольшими значениями, при равенстве - с меньшим id.
+     */
+    private static long[][] top(LongIntHashMap values, int limit) {
+        Comparator<long[]> worstFirst = Comparator.<long[]>comparingLong(entry -> entry[1])
+                .thenComparing(Comparator.<long[]>comparingLong(entry -> entry[0]).reversed());
+        PriorityQueue<long[]> best = new PriorityQueue<>(Math.max(1, limit), worstFirst);
+        values.forEach((id, value) -> {
+            // массив создаем, только если пара действительно попадает в топ
+            if (best.size() < limit) {
+                best.add(new long[]{id, value});
+            } else if (limit > 0 && (value > best.peek()[1] || value == best.peek()[1] && id < best.peek()[0])) {
+                best.poll();
+                best.add(new long[]{id, value});
+            }
+        });
+        long[][] result = new long[best.size()][];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = best.poll();
+        }
+        return result;
+    }
+
+    private static int countContained(LongHashSet smaller, LongHashSet larger) {
+        int[] count = {0};
+        smaller.forEach(value -> {
+            if (larger.contains(value)) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    private void addLikeLocked(long filmId, long userId) {
+        filmsByUser.computeIfAbsent(userId, id -> new LongHashSet()).add(filmId);
+        usersByFilm.computeIfAbsent(filmId, id -> new LongHashSet()).add(userId);
+    }
+
+    private static void remove(Map<Long, LongHashSet> index, long key, long value) {
+        LongHashSet values = index.get(key);
+        if (values != null && values.remove(value) && values.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Приближенный поиск пользователей с похожими лайками (MinHash + LSH).
+ * Для каждого пользователя хранится MinHash-сигнатура его лайков из bands * rows хэшей.
+ * Сигнатура режется на bands полос по rows значений, и пользователь попадает в корзину
+ * каждой своей полосы. Кандидаты в похожие - соседи по корзинам: пользователи с коэффициентом
+ * Жаккара s совпадают хотя бы в одной полосе с вероятностью 1 - (1 - s^rows)^bands, поэтому
+ * запрос не перебирает всех пользователей. Кандидаты затем ранжируются по точному коэффициенту.
+ * <p>
+ * Лайк только уменьшает минимумы, поэтому добавление обновляет сигнатуру на месте; после снятия
+ * лайка сигнатура пересчитывается по лайкам пользователя из {@link LikeMatrix}. Изменения лайков
+ * одного пользователя должны приходить сюда в том же порядке, что и в матрицу: иначе запоздавший
+ * likeAdded вернет в сигнатуру уже снятый лайк. {@link FilmService} меняет матрицу и индекс
+ * под одним монитором пользователя.
+ */
+@Component
+public class UserSimilarityIndex {
+    private static final Logger log = LoggerFactory.getLogger(UserSimilarityIndex.class);
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final LikeMatrix likeMatrix;
+    private final int bands;
+    private final int rows;
+    private final int maxCandidates;
+    private final long[] hashMultipliers;
+    private final long[] hashOffsets;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, long[]> signatures = new HashMap<>();
+    private final Map<Long, LongHashSet>[] buckets;
+
+    @SuppressWarnings("unchecked")
+    public UserSimilarityIndex(LikeMatrix likeMatrix,
+                               @Value("${filmorate.similar-users.bands:32}") int bands,
+                               @Value("${filmorate.similar-users.rows:2}") int rows,
+                               @Value("${filmorate.similar-users.max-candidates:5000}") int maxCandidates) {
+        this.likeMatrix = likeMatrix;
+        this.bands = bands;
+        this.rows = rows;
+        this.maxCandidates = maxCandidates;
+        Random random = new Random(SEED);
+        hashMultipliers = new long[bands * rows];
+        hashOffsets = new long[bands * rows];
+        for (int i = 0; i < hashMultipliers.length; i++) {
+            hashMultipliers[i] = random.nextLong() | 1;
+            hashOffsets[i] = random.nextLong();
+        }
+        buckets = IntStream.range(0, bands).mapToObj(band -> new HashMap<Long, LongHashSet>()).toArray(Map[]::new);
+    }
+
+    @PostConstruct
+    public void load() {
+        Map<Long, long[]> computed = new HashMap<>();
+        likeMatrix.forEachUser((userId, films) -> computed.put(userId, signatureOf(films)));
+        lock.writeLock().lock();
+        try {
+            signatures.clear();
+            Arrays.stream(buckets).forEach(Map::clear);
+            computed.forEach(this::putLocked);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Индекс похожих пользователей загружен, пользователей: {}", computed.size());
+    }
+
+    public void likeAdded(long userId, long filmId) {
+        lock.writeLock().lock();
+        try {
+            long[] signature = signatures.get(userId);
+            long[] updated = signature == null ? emptySignature() : signature.clone();
+            boolean changed = false;
+            for (int i = 0; i < updated.length; i++) {
+                long hash = hash(i, filmId);
+                if (hash < updated[i]) {
+                    updated[i] = hash;
+                    changed = true;
+                }
+            }
+            if (changed) {
+                putLocked(userId, updated);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Пересчитывает сигнатуру пользователя по его текущим лайкам, например после снятия лайка.
+     */
+    public void likesChanged(long userId) {
+        lock.writeLock().lock();
+        try {
+            // лайки читаем под блокировкой индекса, чтобы параллельный likeAdded не потерялся
+            LongHashSet films = likeMatrix.getLikedFilms(userId);
+            if (films.isEmpty()) {
+                removeLocked(userId);
+            } else {
+                putLocked(userId, signatureOf(films));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает до limit id пользователей с наиболее похожими лайками, от более похожих к менее,
+     * при равенстве - по возрастанию id.
+     */
+    public long[] similar(long userId, int limit) {
+        long[] candidates;
+        lock.readLock().lock();
+        try {
+            long[] signature = signatures.get(userId);
+            if (signature == null) {
+                return new long[0];
+            }
+            LongHashSet found = new LongHashSet();
+            for (int band = 0; band < bands && found.size() < maxCandidates; band++) {
+                LongHashSet bucket = buckets[band].get(bandKey(signature, band));
+                if (bucket != null) {
+                    bucket.forEach(found::add);
+                }
+            }
+            found.remove(userId);
+            candidates = found.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        double[] similarity = likeMatrix.jaccard(userId, candidates);
+        return IntStream.range(0, candidates.length)
+                .filter(i -> similarity[i] > 0)
+                .boxed()
+                .sorted(Comparator.<Integer>comparingDouble(i -> -similarity[i]).thenComparingLong(i -> candidates[i]))
+                .limit(limit)
+                .mapToLong(i -> candidates[i])
+                .toArray();
+    }
+
+    private long[] signatureOf(LongHashSet films) {
+        long[] signature = emptySignature();
+        films.forEach(filmId -> {
+            for (int i = 0; i < signature.length; i++) {
+                signature[i] = Math.min(signature[i], hash(i, filmId));
+            }
+        });
+        return signature;
+    }
+
+    private long[] emptySignature() {
+        long[] signature = new long[bands * rows];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        return signature;
+    }
+
+    private long hash(int function, long filmId) {
+        long hash = filmId * hashMultipliers[function] + hashOffsets[function];
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        return hash ^ (hash >>> 33);
+    }
+
+    private long bandKey(long[] signature, int band) {
+        long key = 1;
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            key = key * 31 + signature[i];
+        }
+        return key;
+    }
+
+    private void putLocked(long userId, long[] signature) {
+        removeLocked(userId);
+        signatures.put(userId, signature);
+        for (int band = 0; band < bands; band++) {
+            buckets[band].computeIfAbsent(bandKey(signature, band), key -> new LongHashSet()).add(userId);
+        }
+    }
+
+    private void removeLocked(long userId) {
+        long[] signature = signatures.remove(userId);
+        if (signature == null) {
+            return;
+        }
+        for (int band = 0; band < bands; band++) {
+            long key = bandKey(signature, band);
+            LongHashSet bucket = buckets[band].get(key);
+            if (bucket != null && bucket.remove(userId) && bucket.isEmpty()) {
+                buckets[band].remove(key);
+            }
+        }
+    }
+}
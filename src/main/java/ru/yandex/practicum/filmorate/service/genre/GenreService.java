@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.service.genre;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
@@ -20,7 +21,20 @@ public class GenreService {
         return genreStorage.get(id);
     }
 
-    public void ensureMpaRatingExists(int id) {
+    public void ensureGenreExists(int id) {
         genreStorage.ensureGenreExists(id);
     }
+
+    /**
+     * Периодически перечитывает справочник жанров, чтобы изменения в базе доходили без перезапуска.
+     */
+    @Scheduled(initialDelayString = "${filmorate.dictionaries.refresh-delay-ms:600000}",
+            fixedDelayString = "${filmorate.dictionaries.refresh-delay-ms:600000}")
+    public void refresh() {
+        genreStorage.refresh();
+    }
+
+    public long getVersion() {
+        return genreStorage.getVersion();
+    }
 }
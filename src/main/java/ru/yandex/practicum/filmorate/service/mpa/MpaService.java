@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.service.mpa;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
@@ -23,4 +24,17 @@ public class MpaService {
     public void ensureMpaRatingExists(int id) {
         mpaStorage.ensureMpaRatingExists(id);
     }
+
+    /**
+     * Периодически перечитывает справочник mpa-рейтингов, чтобы изменения в базе доходили без перезапуска.
+     */
+    @Scheduled(initialDelayString = "${filmorate.dictionaries.refresh-delay-ms:600000}",
+            fixedDelayString = "${filmorate.dictionaries.refresh-delay-ms:600000}")
+    public void refresh() {
+        mpaStorage.refresh();
+    }
+
+    public long getVersion() {
+        return mpaStorage.getVersion();
+    }
 }
@@ -0,0 +1,138 @@
+package ru.yandex.practicum.filmorate.service.user;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.cache.LruCache;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Рекомендации "возможно, вы знакомы": пользователи, которые не являются друзьями,
+ * ранжированные по числу общих друзей, при равенстве - по возрастанию id.
+ * Кандидаты собираются обходом на два шага по графу дружбы; на каждом шаге просматривается
+ * не больше maxFanOut соседей, поэтому пользователи с огромным числом друзей не раздувают запрос.
+ * Результат (до maxResults id) кэшируется на пользователя вместе с поколениями тех, чьи списки
+ * друзей читались при подсчете: самого пользователя и просмотренных друзей. Изменение дружбы
+ * увеличивает поколение только изменившегося пользователя, и запись из кэша отдается, лишь пока
+ * поколения всех ее зависимостей не изменились.
+ */
+@Component
+public class FriendRecommendations {
+    private static final Comparator<Candidate> WORST_FIRST = Comparator.comparingInt(Candidate::mutualFriends)
+            .thenComparing(Comparator.comparingLong(Candidate::userId).reversed());
+
+    private final FriendshipGraph friendshipGraph;
+    private final int maxFanOut;
+    private final int maxResults;
+    private final LruCache<Long, Recommendations> cache;
+    // поколение списка друзей по пользователям; отсутствие записи - нулевое поколение
+    private final ConcurrentHashMap<Long, Integer> generations = new ConcurrentHashMap<>();
+
+    public FriendRecommendations(FriendshipGraph friendshipGraph,
+                                 @Value("${filmorate.recommendations.max-fan-out:1000}") int maxFanOut,
+                                 @Value("${filmorate.recommendations.max-results:100}") int maxResults,
+                                 @Value("${filmorate.recommendations.cache-size:10000}") int cacheSize) {
+        this.friendshipGraph = friendshipGraph;
+        this.maxFanOut = maxFanOut;
+        this.maxResults = maxResults;
+        this.cache = new LruCache<>("friend-recommendations", cacheSize, Long.MAX_VALUE,
+                recommendations -> 8L * recommendations.userIds().length + 12L * recommendations.dependencies().length);
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    /**
+     * Возвращает до limit (не больше maxResults) рекомендованных id пользователей, от лучших к худшим.
+     */
+    public long[] recommend(long userId, int limit) {
+        Recommendations recommendations = cache.get(userId);
+        if (recommendations == null || !isFresh(recommendations)) {
+            recommendations = compute(userId);
+            cache.put(userId, recommendations);
+        }
+        long[] userIds = recommendations.userIds();
+        return Arrays.copyOf(userIds, Math.min(limit, userIds.length));
+    }
+
+    /**
+     * Изменились друзья userId: устаревают его рекомендации и рекомендации всех, у кого он в друзьях, -
+     * их записи зависят от его поколения и будут пересчитаны при следующем чтении.
+     */
+    public void friendshipChanged(long userId) {
+        generations.merge(userId, 1, Integer::sum);
+        cache.invalidate(userId);
+    }
+
+    /**
+     * Удаленный пользователь пропадает из чужих списков друзей, поэтому устаревают рекомендации его друзей;
+     * из рекомендаций остальных его отфильтрует загрузка пользователей по id.
+     */
+    public void userDeleted(long userId) {
+        friendshipChanged(userId);
+    }
+
+    private boolean isFresh(Recommendations recommendations) {
+        long[] dependencies = recommendations.dependencies();
+        for (int i = 0; i < dependencies.length; i++) {
+            if (generation(dependencies[i]) != recommendations.generations()[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int generation(long userId) {
+        return generations.getOrDefault(userId, 0);
+    }
+
+    /**
+     * Поколение каждого пользователя запоминается до чтения его списка друзей: изменение,
+     * пришедшее после чтения, сделает запись устаревшей.
+     */
+    private Recommendations compute(long userId) {
+        int ownGeneration = generation(userId);
+        long[] friends = friendshipGraph.neighbors(userId);
+        int friendsToVisit = Math.min(friends.length, maxFanOut);
+        long[] dependencies = new long[friendsToVisit + 1];
+        int[] dependencyGenerations = new int[friendsToVisit + 1];
+        dependencies[0] = userId;
+        dependencyGenerations[0] = ownGeneration;
+        LongIntHashMap mutualFriends = new LongIntHashMap();
+        for (int friend = 0; friend < friendsToVisit; friend++) {
+            long friendId = friends[friend];
+            dependencies[friend + 1] = friendId;
+            dependencyGenerations[friend + 1] = generation(friendId);
+            friendshipGraph.forEachNeighbor(friendId, maxFanOut, candidateId -> {
+                if (candidateId != userId && Arrays.binarySearch(friends, candidateId) < 0) {
+                    mutualFriends.addTo(candidateId, 1);
+                }
+            });
+        }
+
+        // в куче держим только maxResults лучших кандидатов, худший - на вершине
+        PriorityQueue<Candidate> best = new PriorityQueue<>(maxResults + 1, WORST_FIRST);
+        mutualFriends.forEach((candidateId, count) -> {
+            best.add(new Candidate(candidateId, count));
+            if (best.size() > maxResults) {
+                best.poll();
+            }
+        });
+        long[] result = new long[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = best.poll().userId();
+        }
+        return new Recommendations(result, dependencies, dependencyGenerations);
+    }
+
+    private record Candidate(long userId, int mutualFriends) {
+    }
+
+    private record Recommendations(long[] userIds, long[] dependencies, int[] generations) {
+    }
+}
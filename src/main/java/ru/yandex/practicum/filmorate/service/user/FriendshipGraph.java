@@ -0,0 +1,442 @@
+package ru.yandex.practicum.filmorate.service.user;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Граф подтвержденной дружбы в памяти приложения.
+ * Основа хранится в формате CSR: отсортированный массив id пользователей, смещения их строк
+ * и общий массив друзей, отсортированных внутри каждой строки. Изменения после загрузки копятся
+ * в дельте (добавленные и удаленные ребра по пользователям) и периодически вливаются в основу.
+ * Чтения идут под read-блокировкой, изменения - под write-блокировкой.
+ * Граф периодически перечитывается из хранилища, чтобы расхождения с ним не копились бесконечно;
+ * изменения, пришедшие во время перечитывания, накладываются поверх прочитанного.
+ */
+@Component
+public class FriendshipGraph {
+    private static final Logger log = LoggerFactory.getLogger(FriendshipGraph.class);
+
+    private final UserStorage userStorage;
+    private final int compactionThreshold;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Csr base = Csr.EMPTY;
+    private final Map<Long, LongHashSet> added = new HashMap<>();
+    private final Map<Long, LongHashSet> removed = new HashMap<>();
+    private final LongHashSet deletedUsers = new LongHashSet();
+    private int deltaSize;
+    private long deltaVersion;
+    // пользователи, чьи связи менялись во время перечитывания графа; null, пока перечитывания нет
+    private LongHashSet changedDuringLoad;
+    private LongHashSet deletedDuringLoad;
+
+    public FriendshipGraph(UserStorage userStorage,
+                           @Value("${filmorate.friendship-graph.compaction-threshold:10000}") int compactionThreshold) {
+        this.userStorage = userStorage;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Загружает граф из хранилища при старте и затем периодически перечитывает его. Хранилище читается
+     * без блокировки графа; связи пользователей, изменившиеся за это время, берутся из текущего графа,
+     * а не из прочитанного - прочитанное могло их не застать.
+     */
+    @PostConstruct
+    @Scheduled(initialDelayString = "${filmorate.friendship-graph.reload-delay-ms:3600000}",
+            fixedDelayString = "${filmorate.friendship-graph.reload-delay-ms:3600000}")
+    public synchronized void load() {
+        lock.writeLock().lock();
+        try {
+            changedDuringLoad = new LongHashSet();
+            deletedDuringLoad = new LongHashSet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Csr loaded = null;
+        try {
+            CsrBuilder builder = new CsrBuilder();
+            userStorage.forEachFriendship(builder::add);
+            loaded = builder.build();
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (loaded != null) {
+                    Map<Long, long[]> changed = new HashMap<>();
+                    changedDuringLoad.forEach(userId -> changed.put(userId, neighborsLocked(userId)));
+                    base = loaded;
+                    clearDelta();
+                    deletedDuringLoad.forEach(this::removeUserLocked);
+                    changed.forEach(this::restoreNeighborsLocked);
+                }
+                changedDuringLoad = null;
+                deletedDuringLoad = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        log.info("Граф дружбы загружен: пользователей {}, связей {}", loaded.nodes.length, loaded.neighbors.length);
+    }
+
+    public void addEdge(long userId, long friendId) {
+        lock.writeLock().lock();
+        try {
+            LongHashSet removedOfUser = removed.get(userId);
+            if (removedOfUser != null) {
+                removedOfUser.remove(friendId);
+            }
+            if (!base.contains(userId, friendId)) {
+                added.computeIfAbsent(userId, id -> new LongHashSet()).add(friendId);
+            }
+            if (changedDuringLoad != null) {
+                changedDuringLoad.add(userId);
+            }
+            deltaChanged();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeEdge(long userId, long friendId) {
+        lock.writeLock().lock();
+        try {
+            LongHashSet addedOfUser = added.get(userId);
+            if (addedOfUser != null) {
+                addedOfUser.remove(friendId);
+            }
+            if (base.contains(userId, friendId)) {
+                removed.computeIfAbsent(userId, id -> new LongHashSet()).add(friendId);
+            }
+            if (changedDuringLoad != null) {
+                changedDuringLoad.add(userId);
+            }
+            deltaChanged();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Убирает удаленного пользователя из графа: и его друзей, и его самого из чужих списков.
+     */
+    public void removeUser(long userId) {
+        lock.writeLock().lock();
+        try {
+            if (deletedDuringLoad != null) {
+                deletedDuringLoad.add(userId);
+            }
+            removeUserLocked(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean hasEdge(long userId, long friendId) {
+        lock.readLock().lock();
+        try {
+            if (deletedUsers.contains(userId) || deletedUsers.contains(friendId)) {
+                return false;
+            }
+            LongHashSet addedOfUser = added.get(userId);
+            if (addedOfUser != null && addedOfUser.contains(friendId)) {
+                return true;
+            }
+            LongHashSet removedOfUser = removed.get(userId);
+            return base.contains(userId, friendId) && (removedOfUser == null || !removedOfUser.contains(friendId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает id друзей пользователя по возрастанию.
+     */
+    public long[] neighbors(long userId) {
+        lock.readLock().lock();
+        try {
+            return neighborsLocked(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Передает в action id не более limit друзей пользователя (без гарантии порядка, какие именно - не
+     * определено) и прекращает обход, как только limit набран: у популярного пользователя остальная
+     * часть строки не просматривается.
+     */
+    public void forEachNeighbor(long userId, int limit, LongConsumer action) {
+        lock.readLock().lock();
+        try {
+            if (deletedUsers.contains(userId) || limit <= 0) {
+                return;
+            }
+            int visited = 0;
+            LongHashSet removedOfUser = removed.get(userId);
+            int row = base.rowOf(userId);
+            if (row >= 0) {
+                for (int i = base.offsets[row]; i < base.offsets[row + 1] && visited < limit; i++) {
+                    long friendId = base.neighbors[i];
+                    if ((removedOfUser == null || !removedOfUser.contains(friendId)) && !deletedUsers.contains(friendId)) {
+                        action.accept(friendId);
+                        visited++;
+                    }
+                }
+            }
+            LongHashSet addedOfUser = added.get(userId);
+            if (addedOfUser != null && visited < limit) {
+                int[] remaining = {limit - visited};
+                addedOfUser.forEachWhile(friendId -> {
+                    if (!deletedUsers.contains(friendId)) {
+                        action.accept(friendId);
+                        remaining[0]--;
+                    }
+                    return remaining[0] > 0;
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает общих друзей двух пользователей по возрастанию id.
+     */
+    public long[] commonNeighbors(long userId, long otherUserId) {
+        long[] first;
+        long[] second;
+        lock.readLock().lock();
+        try {
+            first = neighborsLocked(userId);
+            second = neighborsLocked(otherUserId);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return intersectSorted(first, second);
+    }
+
+    /**
+     * Пересечение двух отсортированных массивов слиянием за O(n + m).
+     */
+    static long[] intersectSorted(long[] first, long[] second) {
+        long[] result = new long[Math.min(first.length, second.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Вливает дельту в основу. Новая основа строится под read-блокировкой, чтобы не останавливать чтения;
+     * если за это время граф изменился, сборка повторяется уже под write-блокировкой.
+     */
+    @Scheduled(fixedDelayString = "${filmorate.friendship-graph.compaction-delay-ms:60000}")
+    public void compact() {
+        Csr compacted;
+        long version;
+        lock.readLock().lock();
+        try {
+            if (deltaSize == 0) {
+                return;
+            }
+            version = deltaVersion;
+            compacted = rebuildLocked();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (version != deltaVersion) {
+                compacted = rebuildLocked();
+            }
+            base = compacted;
+            clearDelta();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Граф дружбы уплотнен: пользователей {}, связей {}", compacted.nodes.length, compacted.neighbors.length);
+    }
+
+    private void removeUserLocked(long userId) {
+        deletedUsers.add(userId);
+        added.remove(userId);
+        removed.remove(userId);
+        deltaChanged();
+    }
+
+    /**
+     * Приводит связи пользователя к friends дельтой относительно основы.
+     */
+    private void restoreNeighborsLocked(long userId, long[] friends) {
+        LongHashSet wanted = LongHashSet.of(friends);
+        LongHashSet removedOfUser = new LongHashSet();
+        LongHashSet addedOfUser = new LongHashSet();
+        int row = base.rowOf(userId);
+        if (row >= 0) {
+            for (int i = base.offsets[row]; i < base.offsets[row + 1]; i++) {
+                if (!wanted.contains(base.neighbors[i])) {
+                    removedOfUser.add(base.neighbors[i]);
+                }
+            }
+        }
+        for (long friendId : friends) {
+            if (!base.contains(userId, friendId)) {
+                addedOfUser.add(friendId);
+            }
+        }
+        added.remove(userId);
+        removed.remove(userId);
+        if (!addedOfUser.isEmpty()) {
+            added.put(userId, addedOfUser);
+        }
+        if (!removedOfUser.isEmpty()) {
+            removed.put(userId, removedOfUser);
+        }
+        deltaChanged();
+    }
+
+    private long[] neighborsLocked(long userId) {
+        if (deletedUsers.contains(userId)) {
+            return new long[0];
+        }
+        int row = base.rowOf(userId);
+        LongHashSet removedOfUser = removed.get(userId);
+        LongHashSet addedOfUser = added.get(userId);
+        long[] baseRow = row < 0 ? new long[0] : Arrays.copyOfRange(base.neighbors, base.offsets[row], base.offsets[row + 1]);
+        if (removedOfUser == null && addedOfUser == null && deletedUsers.isEmpty()) {
+            return baseRow;
+        }
+
+        long[] result = new long[baseRow.length + (addedOfUser == null ? 0 : addedOfUser.size())];
+        int size = 0;
+        for (long friendId : baseRow) {
+            if ((removedOfUser == null || !removedOfUser.contains(friendId)) && !deletedUsers.contains(friendId)) {
+                result[size++] = friendId;
+            }
+        }
+        if (addedOfUser != null) {
+            for (long friendId : addedOfUser.toArray()) {
+                if (!deletedUsers.contains(friendId)) {
+                    result[size++] = friendId;
+                }
+            }
+        }
+        result = Arrays.copyOf(result, size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private Csr rebuildLocked() {
+        TreeSet<Long> users = new TreeSet<>(added.keySet());
+        for (long userId : base.nodes) {
+            users.add(userId);
+        }
+        CsrBuilder builder = new CsrBuilder();
+        for (long userId : users) {
+            for (long friendId : neighborsLocked(userId)) {
+                builder.add(userId, friendId);
+            }
+        }
+        return builder.build();
+    }
+
+    private void deltaChanged() {
+        deltaVersion++;
+        if (++deltaSize >= compactionThreshold) {
+            base = rebuildLocked();
+            clearDelta();
+        }
+    }
+
+    private void clearDelta() {
+        added.clear();
+        removed.clear();
+        deletedUsers.clear();
+        deltaSize = 0;
+        deltaVersion++;
+    }
+
+    /**
+     * Неизменяемая основа графа: строка пользователя nodes[i] - это neighbors[offsets[i]..offsets[i + 1]).
+     */
+    private static final class Csr {
+        static final Csr EMPTY = new Csr(new long[0], new int[]{0}, new long[0]);
+
+        final long[] nodes;
+        final int[] offsets;
+        final long[] neighbors;
+
+        Csr(long[] nodes, int[] offsets, long[] neighbors) {
+            this.nodes = nodes;
+            this.offsets = offsets;
+            this.neighbors = neighbors;
+        }
+
+        int rowOf(long userId) {
+            return Arrays.binarySearch(nodes, userId);
+        }
+
+        boolean contains(long userId, long friendId) {
+            int row = rowOf(userId);
+            return row >= 0 && Arrays.binarySearch(neighbors, offsets[row], offsets[row + 1], friendId) >= 0;
+        }
+    }
+
+    /**
+     * Собирает CSR из ребер, переданных по возрастанию (пользователь, друг).
+     */
+    private static final class CsrBuilder {
+        private long[] nodes = new long[16];
+        private int[] offsets = new int[17];
+        private long[] neighbors = new long[16];
+        private int nodeCount;
+        private int edgeCount;
+
+        void add(long userId, long friendId) {
+            if (nodeCount == 0 || nodes[nodeCount - 1] != userId) {
+                if (nodeCount == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodeCount * 2);
+                    offsets = Arrays.copyOf(offsets, nodeCount * 2 + 1);
+                }
+                nodes[nodeCount] = userId;
+                offsets[nodeCount] = edgeCount;
+                nodeCount++;
+            }
+            if (edgeCount == neighbors.length) {
+                neighbors = Arrays.copyOf(neighbors, edgeCount * 2);
+            }
+            neighbors[edgeCount++] = friendId;
+        }
+
+        Csr build() {
+            int[] builtOffsets = Arrays.copyOf(offsets, nodeCount + 1);
+            builtOffsets[nodeCount] = edgeCount;
+            return new Csr(Arrays.copyOf(nodes, nodeCount), builtOffsets, Arrays.copyOf(neighbors, edgeCount));
+        }
+    }
+}
@@ -2,83 +2,152 @@ package ru.yandex.practicum.filmorate.service.user;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.OptimisticRetry;
+import ru.yandex.practicum.filmorate.service.film.UserSimilarityIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+import ru.yandex.practicum.filmorate.util.StripedLocks;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class UserService {
     private final UserStorage userStorage;
+    private final FriendshipGraph friendshipGraph;
+    private final FriendRecommendations friendRecommendations;
+    private final UserSimilarityIndex similarityIndex;
+    private final OptimisticRetry optimisticRetry;
+    // запись дружбы в хранилище и в граф идут под монитором пользователя, чтобы граф менялся в том же порядке
+    private final StripedLocks friendshipLocks = new StripedLocks(64);
+    public static final int MAX_PAGE_SIZE = 1000;
     private static final Logger log = LoggerFactory.getLogger(UserService.class);
 
-    public UserService(@Qualifier("RealDbUserStorage") UserStorage userStorage) {
+    public UserService(UserStorage userStorage, FriendshipGraph friendshipGraph,
+                       FriendRecommendations friendRecommendations, UserSimilarityIndex similarityIndex,
+                       OptimisticRetry optimisticRetry) {
         this.userStorage = userStorage;
+        this.friendshipGraph = friendshipGraph;
+        this.friendRecommendations = friendRecommendations;
+        this.similarityIndex = similarityIndex;
+        this.optimisticRetry = optimisticRetry;
     }
 
     public void addFriends(long id1, long id2) {
-        User user1 = userStorage.getUser(id1);
+        userStorage.ensureUserExists(id1);
         userStorage.ensureUserExists(id2);
 
-        user1.addFriend(id2);
-
-        userStorage.update(user1);
+        synchronized (friendshipLocks.forKey(id1)) {
+            userStorage.addFriend(id1, id2);
+            friendshipGraph.addEdge(id1, id2);
+        }
+        friendRecommendations.friendshipChanged(id1);
     }
 
     public void removeFromFriends(long id1, long id2) {
-        User user1 = userStorage.getUser(id1);
+        userStorage.ensureUserExists(id1);
         userStorage.ensureUserExists(id2);
 
-        user1.deleteFriend(id2);
-
-        userStorage.update(user1);
+        synchronized (friendshipLocks.forKey(id1)) {
+            userStorage.removeFriend(id1, id2);
+            friendshipGraph.removeEdge(id1, id2);
+        }
+        friendRecommendations.friendshipChanged(id1);
     }
 
     public List<User> findIntersectionOfFriends(long userId1, long userId2) {
-        User user = userStorage.getUser(userId1);
-        User user2 = userStorage.getUser(userId2);
-        Set<Long> friendsOfUser1 = user.getFriends();
-        Set<Long> friendsOfUser2 = user2.getFriends();
-        Set<Long> intersection = new HashSet<>(friendsOfUser1);
-        intersection.retainAll(friendsOfUser2);
-        return intersection.stream().map(userStorage::getUser).toList();
+        userStorage.ensureUserExists(userId1);
+        userStorage.ensureUserExists(userId2);
+        return userStorage.getUsers(toList(friendshipGraph.commonNeighbors(userId1, userId2)));
     }
 
     public List<User> getFriends(long id) {
-        User user = userStorage.getUser(id);
-        return user.getFriends().stream().map(userStorage::getUser).toList();
+        userStorage.ensureUserExists(id);
+        return userStorage.getUsers(toList(friendshipGraph.neighbors(id)));
+    }
+
+    /**
+     * Рекомендует пользователю до limit знакомых его друзей, от большего числа общих друзей к меньшему.
+     */
+    public List<User> getRecommendations(long id, int limit) {
+        if (limit <= 0 || limit > friendRecommendations.getMaxResults()) {
+            throw new ValidationException(String.format("Параметр limit должен быть от 1 до %d",
+                    friendRecommendations.getMaxResults()));
+        }
+        userStorage.ensureUserExists(id);
+        return getUsersInOrder(friendRecommendations.recommend(id, limit));
+    }
+
+    /**
+     * Возвращает до limit пользователей с наиболее похожими на пользователя лайками.
+     */
+    public List<User> getSimilarUsers(long id, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException(String.format("Параметр limit должен быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        userStorage.ensureUserExists(id);
+        return getUsersInOrder(similarityIndex.similar(id, limit));
+    }
+
+    private List<User> getUsersInOrder(long[] ids) {
+        // хранилище отдает пользователей по возрастанию id, возвращаем исходный порядок
+        Map<Long, User> usersById = userStorage.getUsers(toList(ids)).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        return Arrays.stream(ids).mapToObj(usersById::get).filter(Objects::nonNull).toList();
     }
 
     public List<User> getUsers() {
         return userStorage.getUsers();
     }
 
+    public List<User> getUsersPage(long afterId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException(String.format("Параметр limit должен быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        return userStorage.getUsersPage(afterId, limit);
+    }
+
     public User createUser(User user) {
         checkUserBeforeAddOrUpdate(user);
         return userStorage.create(user);
     }
 
+    /**
+     * Обновляет пользователя со сравнением версий, так же как {@link ru.yandex.practicum.filmorate.service.film.FilmService#update}.
+     */
     public User updateUser(User user) {
         checkUserBeforeAddOrUpdate(user);
-        userStorage.ensureUserExists(user.getId());
-        return userStorage.update(user);
+        if (user.getVersion() != 0) {
+            return userStorage.update(user);
+        }
+        return optimisticRetry.run(() -> {
+            user.setVersion(userStorage.getUser(user.getId()).getVersion());
+            return userStorage.update(user);
+        });
     }
 
     public void deleteUser(long id) {
         userStorage.delete(id);
+        friendshipGraph.removeUser(id);
+        friendRecommendations.userDeleted(id);
     }
 
     public User getUser(long id) {
         return userStorage.getUser(id);
     }
 
+    private static List<Long> toList(long[] ids) {
+        return Arrays.stream(ids).boxed().toList();
+    }
+
     public void checkUserBeforeAddOrUpdate(User user) {
         LocalDate currentDate = LocalDate.now();
 
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Primary;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.cache.LruCache;
+import ru.yandex.practicum.filmorate.storage.film.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.OffHeapFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.CachingUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+/**
+ * Выбор хранилищ фильмов и пользователей, которые получают сервисы.
+ * filmorate.storage.film / filmorate.storage.user: db - база, memory - память;
+ * для фильмов есть еще offheap - память вне кучи ({@link OffHeapFilmStorage});
+ * filmorate.storage.cache.enabled оборачивает выбранное хранилище в кэш.
+ * Хранилища отдаются сервисам только после восстановления хранилищ в памяти из журнала.
+ */
+@Configuration
+public class StorageConfig {
+    private static final String MEMORY = "memory";
+    private static final String OFF_HEAP = "offheap";
+
+    @Bean
+    public LruCache<Long, Film> filmCache(@Value("${filmorate.storage.cache.films.max-size:10000}") int maxSize,
+                                          @Value("${filmorate.storage.cache.films.max-weight:67108864}") long maxWeight) {
+        return new LruCache<>("films", maxSize, maxWeight, CachingFilmStorage::weigh);
+    }
+
+    @Bean
+    public LruCache<Long, User> userCache(@Value("${filmorate.storage.cache.users.max-size:10000}") int maxSize,
+                                          @Value("${filmorate.storage.cache.users.max-weight:33554432}") long maxWeight) {
+        return new LruCache<>("users", maxSize, maxWeight, CachingUserStorage::weigh);
+    }
+
+    @Bean
+    @Primary
+    @DependsOn("inMemoryPersistence")
+    public FilmStorage filmStorage(@Qualifier("RealDbFilmStorage") FilmStorage dbStorage,
+                                   @Qualifier("InMemoryFilmStorage") FilmStorage memoryStorage,
+                                   @Qualifier("OffHeapFilmStorage") FilmStorage offHeapStorage,
+                                   LruCache<Long, Film> filmCache,
+                                   @Value("${filmorate.storage.film:db}") String type,
+                                   @Value("${filmorate.storage.cache.enabled:true}") boolean cacheEnabled) {
+        FilmStorage storage = switch (type) {
+            case MEMORY -> memoryStorage;
+            case OFF_HEAP -> offHeapStorage;
+            default -> dbStorage;
+        };
+        return cacheEnabled ? new CachingFilmStorage(storage, filmCache) : storage;
+    }
+
+    @Bean
+    @Primary
+    @DependsOn("inMemoryPersistence")
+    public UserStorage userStorage(@Qualifier("RealDbUserStorage") UserStorage dbStorage,
+                                   @Qualifier("InMemoryUserStorage") UserStorage memoryStorage,
+                                   LruCache<Long, User> userCache,
+                                   @Value("${filmorate.storage.user:db}") String type,
+                                   @Value("${filmorate.storage.cache.enabled:true}") boolean cacheEnabled) {
+        UserStorage storage = MEMORY.equals(type) ? memoryStorage : dbStorage;
+        return cacheEnabled ? new CachingUserStorage(storage, userCache) : storage;
+    }
+}
@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+/**
+ * Снимок состояния кэша: размер, суммарный вес и счетчики попаданий, промахов и вытеснений.
+ */
+public record CacheStats(String name, int size, long weight, long hits, long misses, long evictions) {
+}
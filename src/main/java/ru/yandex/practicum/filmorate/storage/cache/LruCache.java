@@ -0,0 +1,148 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Ограниченный кэш с вытеснением давно не использованных записей (LRU).
+ * Ограничен и количеством записей, и суммарным весом: вес записи считает weigher.
+ * Все операции синхронизированы - кэш рассчитан на короткие критические секции,
+ * загрузка значения при промахе ({@link #getOrLoad}) выполняется вне блокировки. Если за время загрузки
+ * ключ был сброшен, загруженное значение не кладется в кэш: оно могло быть прочитано до изменения.
+ */
+public class LruCache<K, V> {
+    private final String name;
+    private final int maxSize;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // загрузки, идущие сейчас, по ключам; сброс ключа помечает его загрузку устаревшей
+    private final Map<K, Load> loads = new HashMap<>();
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LruCache(String name, int maxSize, long maxWeight, ToLongFunction<V> weigher) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Значение из кэша, а при промахе - загруженное loader вне блокировки и положенное в кэш,
+     * если ключ не сбрасывали, пока шла загрузка.
+     */
+    public V getOrLoad(K key, Function<K, V> loader) {
+        Load load;
+        synchronized (this) {
+            V value = get(key);
+            if (value != null) {
+                return value;
+            }
+            load = loads.computeIfAbsent(key, k -> new Load());
+            load.loaders++;
+        }
+        V value = null;
+        try {
+            value = loader.apply(key);
+            return value;
+        } finally {
+            finishLoad(key, load, value);
+        }
+    }
+
+    /**
+     * Есть ли ключ в кэше; в отличие от get не считается попаданием или промахом.
+     */
+    public synchronized boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        if (maxSize <= 0 || valueWeight > maxWeight) {
+            return;
+        }
+        V previous = entries.put(key, value);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+        weight += valueWeight;
+
+        Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxSize || weight > maxWeight) {
+            Map.Entry<K, V> entry = eldest.next();
+            weight -= weigher.applyAsLong(entry.getValue());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        V previous = entries.remove(key);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+        Load load = loads.remove(key);
+        if (load != null) {
+            load.invalidated = true;
+        }
+    }
+
+    /**
+     * Удаляет из кэша все значения, подходящие под условие. Еще не загруженные значения проверить нельзя,
+     * поэтому все идущие загрузки считаются устаревшими.
+     */
+    public synchronized void invalidateIf(Predicate<V> predicate) {
+        loads.values().forEach(load -> load.invalidated = true);
+        loads.clear();
+        Iterator<V> values = entries.values().iterator();
+        while (values.hasNext()) {
+            V value = values.next();
+            if (predicate.test(value)) {
+                weight -= weigher.applyAsLong(value);
+                values.remove();
+            }
+        }
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(name, entries.size(), weight, hits.get(), misses.get(), evictions.get());
+    }
+
+    private synchronized void finishLoad(K key, Load load, V value) {
+        if (--load.loaders == 0 && loads.get(key) == load) {
+            loads.remove(key);
+        }
+        if (value != null && !load.invalidated) {
+            put(key, value);
+        }
+    }
+
+    /**
+     * Общее состояние загрузок одного ключа, начатых после его последнего сброса.
+     */
+    private static class Load {
+        private int loaders;
+        private boolean invalidated;
+    }
+}
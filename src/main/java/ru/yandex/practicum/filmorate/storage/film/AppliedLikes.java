@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.FilmLikes;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Итог пакетного применения лайков: какие лайки действительно поставлены и сняты
+ * (повторы и снятие несуществующих сюда не попадают) и актуальное количество лайков затронутых фильмов.
+ */
+public record AppliedLikes(List<FilmLikes> added, List<FilmLikes> removed, Map<Long, Long> likeCounts) {
+}
@@ -0,0 +1,144 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLikes;
+import ru.yandex.practicum.filmorate.storage.cache.LruCache;
+import ru.yandex.practicum.filmorate.util.LongPairConsumer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Кэширующая обертка над хранилищем фильмов. Из кэша отдается только getFilm - остальные чтения
+ * идут в хранилище напрямую. Любое изменение фильма (обновление, удаление, лайки) сначала пишется
+ * в хранилище, а затем выкидывает фильм из кэша. Наружу всегда отдаются копии, чтобы изменения
+ * возвращенного объекта не попадали в кэш.
+ */
+public class CachingFilmStorage implements FilmStorage {
+    private final FilmStorage delegate;
+    private final LruCache<Long, Film> cache;
+
+    public CachingFilmStorage(FilmStorage delegate, LruCache<Long, Film> cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    /**
+     * Примерный вес фильма в байтах: объект, строки, жанры и лайки (если они загружены).
+     */
+    public static long weigh(Film film) {
+        long weight = 128;
+        weight += film.getName() == null ? 0 : 2L * film.getName().length();
+        weight += film.getDescription() == null ? 0 : 2L * film.getDescription().length();
+        weight += film.getGenres() == null ? 0 : 32L * film.getGenres().size();
+        weight += 16L * film.getUsersWhoLiked().size();
+        return weight;
+    }
+
+    @Override
+    public Film create(Film film) {
+        return delegate.create(film);
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        return delegate.createAll(films);
+    }
+
+    @Override
+    public Film update(Film film) {
+        try {
+            return delegate.update(film);
+        } finally {
+            cache.invalidate(film.getId());
+        }
+    }
+
+    @Override
+    public void delete(long id) {
+        try {
+            delegate.delete(id);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public Film getFilm(long id) {
+        return cache.getOrLoad(id, delegate::getFilm).copy();
+    }
+
+    @Override
+    public List<Film> getFilms() {
+        return delegate.getFilms();
+    }
+
+    @Override
+    public List<Film> getFilmsPage(long afterId, int limit) {
+        return delegate.getFilmsPage(afterId, limit);
+    }
+
+    @Override
+    public void forEachFilm(Consumer<Film> action) {
+        delegate.forEachFilm(action);
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        return delegate.getFilmsByIds(ids);
+    }
+
+    @Override
+    public Map<Long, Long> getLikeCounts() {
+        return delegate.getLikeCounts();
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        try {
+            return delegate.addLike(filmId, userId);
+        } finally {
+            cache.invalidate(filmId);
+        }
+    }
+
+    @Override
+    public boolean removeLike(long filmId, long userId) {
+        try {
+            return delegate.removeLike(filmId, userId);
+        } finally {
+            cache.invalidate(filmId);
+        }
+    }
+
+    @Override
+    public AppliedLikes applyLikes(List<FilmLikes> added, List<FilmLikes> removed) {
+        try {
+            return delegate.applyLikes(added, removed);
+        } finally {
+            added.forEach(like -> cache.invalidate(like.getFilmId()));
+            removed.forEach(like -> cache.invalidate(like.getFilmId()));
+        }
+    }
+
+    @Override
+    public void forEachLike(LongPairConsumer action) {
+        delegate.forEachLike(action);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return delegate.findExistingIds(ids);
+    }
+
+    @Override
+    public void ensureFilmExists(long id) throws NotFoundException {
+        if (!cache.contains(id)) {
+            delegate.ensureFilmExists(id);
+        }
+    }
+}
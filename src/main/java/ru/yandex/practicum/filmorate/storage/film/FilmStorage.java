@@ -3,13 +3,24 @@ package ru.yandex.practicum.filmorate.storage.film;
 import org.springframework.web.bind.annotation.RequestBody;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLikes;
+import ru.yandex.practicum.filmorate.util.LongPairConsumer;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     Film create(@RequestBody Film film);
 
+    /**
+     * Создает пачку фильмов за одну операцию и проставляет им сгенерированные id.
+     */
+    List<Film> createAll(List<Film> films);
+
     Film update(@RequestBody Film film);
 
     void delete(long id);
@@ -18,7 +29,57 @@ public interface FilmStorage {
 
     List<Film> getFilms();
 
-    List<Film> getPopularFilms(long count);
+    /**
+     * Возвращает до limit фильмов с id больше afterId, по возрастанию id.
+     */
+    List<Film> getFilmsPage(long afterId, int limit);
+
+    /**
+     * Последовательно передает в action все фильмы каталога с жанрами (без лайков), по возрастанию id,
+     * не собирая каталог в памяти.
+     */
+    void forEachFilm(Consumer<Film> action);
+
+    /**
+     * Возвращает фильмы с указанными id в том же порядке; несуществующие id пропускаются.
+     */
+    List<Film> getFilmsByIds(List<Long> ids);
+
+    /**
+     * Возвращает количество лайков каждого фильма, включая фильмы без лайков.
+     */
+    Map<Long, Long> getLikeCounts();
+
+    /**
+     * Добавляет лайк пользователя фильму. Повторный лайк ничего не меняет.
+     *
+     * @return true, если лайк был добавлен
+     */
+    boolean addLike(long filmId, long userId);
+
+    /**
+     * Убирает лайк пользователя у фильма.
+     *
+     * @return true, если лайк был и его удалили
+     */
+    boolean removeLike(long filmId, long userId);
+
+    /**
+     * Пакетно применяет лайки: added ставятся, removed снимаются (повторы ни на что не влияют).
+     *
+     * @return действительно поставленные и снятые лайки и актуальное количество лайков затронутых фильмов
+     */
+    AppliedLikes applyLikes(List<FilmLikes> added, List<FilmLikes> removed);
+
+    /**
+     * Передает в action все лайки в виде пар (фильм, пользователь).
+     */
+    void forEachLike(LongPairConsumer action);
+
+    /**
+     * Возвращает те id из переданных, для которых фильмы существуют.
+     */
+    Set<Long> findExistingIds(Collection<Long> ids);
 
     void ensureFilmExists(long id) throws NotFoundException;
 }
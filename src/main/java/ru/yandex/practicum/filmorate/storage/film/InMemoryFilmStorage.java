@@ -2,89 +2,280 @@ package ru.yandex.practicum.filmorate.storage.film;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
-import org.springframework.web.bind.annotation.DeleteMapping;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.PutMapping;
-import org.springframework.web.bind.annotation.RequestBody;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.OptimisticLockException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLikes;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.StorageJournal;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+import ru.yandex.practicum.filmorate.util.LongPairConsumer;
+import ru.yandex.practicum.filmorate.util.StripedLocks;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+/**
+ * Потокобезопасное хранилище фильмов в памяти.
+ * Фильмы лежат в ConcurrentSkipListMap (упорядочены по id для постраничной выдачи), id выдаются
+ * атомарным счетчиком. Хранимые объекты меняются и читаются только под монитором своего фильма
+ * из {@link StripedLocks}; наружу отдаются копии без множества лайкнувших - только их количество.
+ * Если включен {@link StorageJournal}, каждое изменение ставится в журнал под тем же монитором,
+ * а ответ возвращается после сброса записи на диск. Журнал не упреждающий: другие запросы видят
+ * изменение еще до сброса, а при ошибке записи оно не откатывается - журнал останавливается,
+ * и такое изменение не попадет ни в журнал, ни в снимок.
+ */
 @Component
 @Qualifier("InMemoryFilmStorage")
 public class InMemoryFilmStorage implements FilmStorage {
 
     private static final Logger log = LoggerFactory.getLogger(InMemoryFilmStorage.class);
-    private final Map<Long, Film> films = new HashMap<>();
+    private static final Comparator<Film> BY_LIKES_DESC = Comparator.comparingLong(Film::getLikeCount).reversed()
+            .thenComparingLong(Film::getId);
 
+    private final ConcurrentSkipListMap<Long, Film> films = new ConcurrentSkipListMap<>();
+    private final AtomicLong idSequence = new AtomicLong();
+    private final StripedLocks locks = new StripedLocks(64);
+    private final StorageJournal journal;
+
+    public InMemoryFilmStorage() {
+        this(StorageJournal.DISABLED);
+    }
+
+    @Autowired
+    public InMemoryFilmStorage(StorageJournal journal) {
+        this.journal = journal;
+    }
 
     @Override
-    @PostMapping
-    public Film create(@RequestBody Film film) {
+    public Film create(Film film) {
         log.debug("Вызван метод create");
-        // формируем дополнительные данные
-        film.setId(this.getNextId());
-        // сохраняем новую публикацию в памяти приложения
-        films.put(film.getId(), film);
+        film.setId(idSequence.incrementAndGet());
+        film.setVersion(1);
+        Film stored = snapshot(film);
+        stored.setLikeCount(0);
+        CompletableFuture<Void> durable;
+        synchronized (locks.forKey(stored.getId())) {
+            durable = journal.append(new JournalRecord.FilmPut(stored));
+            films.put(stored.getId(), stored);
+        }
+        StorageJournal.await(durable);
+        return lockedSnapshot(stored);
+    }
 
-        return film;
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        return films.stream().map(this::create).toList();
     }
 
     @Override
-    @PutMapping
-    public Film update(@RequestBody Film film) {
+    public Film update(Film film) {
         log.debug("Вызван метод update");
-        long id = film.getId();
-        Film updated = films.get(id);
-        updated.setName(film.getName());
-        updated.setDuration(film.getDuration());
-        updated.setReleaseDate(film.getReleaseDate());
-        updated.setDescription(film.getDescription());
-        updated.setUsersWhoLiked(film.getUsersWhoLiked());
-
-        return updated;
+        Film updated = getStored(film.getId());
+        Film result;
+        CompletableFuture<Void> durable;
+        synchronized (locks.forKey(film.getId())) {
+            ensureStillStored(updated);
+            if (updated.getVersion() != film.getVersion()) {
+                throw new OptimisticLockException(String.format("Фильм с id=%d изменен другим запросом", film.getId()));
+            }
+            updated.setVersion(updated.getVersion() + 1);
+            updated.setName(film.getName());
+            updated.setDescription(film.getDescription());
+            updated.setReleaseDate(film.getReleaseDate());
+            updated.setDuration(film.getDuration());
+            updated.setGenres(film.getGenres() == null ? new ArrayList<>() : new ArrayList<>(film.getGenres()));
+            if (film.getMpaRating() != null) {
+                updated.setMpaRating(film.getMpaRating());
+            }
+            result = snapshot(updated);
+            durable = journal.append(new JournalRecord.FilmPut(updated));
+        }
+        StorageJournal.await(durable);
+        return result;
     }
 
     @Override
-    @DeleteMapping
     public void delete(long id) {
         log.debug("Вызван метод delete");
-        films.remove(id);
+        CompletableFuture<Void> durable;
+        synchronized (locks.forKey(id)) {
+            durable = journal.append(new JournalRecord.FilmDelete(id));
+            films.remove(id);
+        }
+        StorageJournal.await(durable);
     }
 
+    @Override
     public Film getFilm(long id) {
-        Film returnedFilm = new Film();
-        if (!films.containsKey(id)) {
-            throw new NotFoundException("Фильм не найден");
-        }
-        Film foundFilm = films.get(id);
-        returnedFilm.setId(foundFilm.getId());
-        returnedFilm.setName(foundFilm.getName());
-        returnedFilm.setDescription(foundFilm.getDescription());
-        returnedFilm.setReleaseDate(foundFilm.getReleaseDate());
-        returnedFilm.setUsersWhoLiked(foundFilm.getUsersWhoLiked());
-
-        return returnedFilm;
+        return lockedSnapshot(getStored(id));
     }
 
+    @Override
     public List<Film> getFilms() {
-        List<Film> result = new ArrayList<>(films.size());
-        result.addAll(films.values());
-        return result;
+        return films.values().stream().map(this::lockedSnapshot).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getFilmsPage(long afterId, int limit) {
+        return films.tailMap(afterId, false).values().stream().limit(limit).map(this::lockedSnapshot).toList();
+    }
+
+    @Override
+    public void forEachFilm(Consumer<Film> action) {
+        films.values().forEach(film -> action.accept(lockedSnapshot(film)));
     }
 
+    /**
+     * Самые популярные фильмы: от большего числа лайков к меньшему, при равенстве - по возрастанию id.
+     * Выбираются за один проход кучей размера count: под монитором фильма читается только число лайков,
+     * а копии снимаются лишь с попавших в итоговый топ. В контракт {@link FilmStorage} не входит,
+     * см. {@link OffHeapFilmStorage#getPopularFilms}.
+     */
     public List<Film> getPopularFilms(long count) {
-        List<Film> result = new ArrayList<>(films.size());
-        result.addAll(films.values().stream().limit(count).toList());
+        int limit = (int) Math.min(count, films.size());
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        // пары (id, лайки), худшая - на вершине
+        PriorityQueue<long[]> best = new PriorityQueue<>(limit, Comparator.<long[]>comparingLong(entry -> entry[1])
+                .thenComparing(Comparator.<long[]>comparingLong(entry -> entry[0]).reversed()));
+        films.forEach((id, film) -> {
+            long likes;
+            synchronized (locks.forKey(id)) {
+                likes = film.countOfLikes();
+            }
+            if (best.size() < limit) {
+                best.add(new long[]{id, likes});
+            } else if (likes > best.peek()[1] || likes == best.peek()[1] && id < best.peek()[0]) {
+                best.poll();
+                best.add(new long[]{id, likes});
+            }
+        });
+        List<Film> result = new ArrayList<>(best.size());
+        best.forEach(entry -> {
+            Film film = films.get(entry[0]);
+            if (film != null) {
+                result.add(lockedSnapshot(film));
+            }
+        });
+        result.sort(BY_LIKES_DESC);
         return result;
     }
 
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        List<Film> result = new ArrayList<>(ids.size());
+        ids.forEach(id -> {
+            Film film = films.get(id);
+            if (film != null) {
+                result.add(lockedSnapshot(film));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public Map<Long, Long> getLikeCounts() {
+        Map<Long, Long> likeCounts = new HashMap<>(films.size() * 2);
+        films.forEach((id, film) -> {
+            synchronized (locks.forKey(id)) {
+                likeCounts.put(id, film.countOfLikes());
+            }
+        });
+        return likeCounts;
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        Film film = getStored(filmId);
+        boolean added;
+        CompletableFuture<Void> durable = null;
+        synchronized (locks.forKey(filmId)) {
+            ensureStillStored(film);
+            added = film.addUserWhoLiked(userId);
+            if (added) {
+                durable = journal.append(new JournalRecord.LikeAdd(filmId, userId));
+            }
+        }
+        if (added) {
+            StorageJournal.await(durable);
+        }
+        return added;
+    }
+
+    @Override
+    public boolean removeLike(long filmId, long userId) {
+        Film film = getStored(filmId);
+        boolean removed;
+        CompletableFuture<Void> durable = null;
+        synchronized (locks.forKey(filmId)) {
+            ensureStillStored(film);
+            removed = film.deleteUserWhoLiked(userId);
+            if (removed) {
+                durable = journal.append(new JournalRecord.LikeRemove(filmId, userId));
+            }
+        }
+        if (removed) {
+            StorageJournal.await(durable);
+        }
+        return removed;
+    }
+
+    @Override
+    public AppliedLikes applyLikes(List<FilmLikes> added, List<FilmLikes> removed) {
+        Map<Long, Long> likeCounts = new HashMap<>();
+        List<FilmLikes> actuallyAdded = added.stream()
+                .filter(like -> addLike(like.getFilmId(), like.getUserId()))
+                .toList();
+        List<FilmLikes> actuallyRemoved = removed.stream()
+                .filter(like -> removeLike(like.getFilmId(), like.getUserId()))
+                .toList();
+        added.forEach(like -> likeCounts.put(like.getFilmId(), getStoredLikeCount(like.getFilmId())));
+        removed.forEach(like -> likeCounts.put(like.getFilmId(), getStoredLikeCount(like.getFilmId())));
+        return new AppliedLikes(actuallyAdded, actuallyRemoved, likeCounts);
+    }
+
+    /**
+     * Копия множества лайкнувших; в контракт {@link FilmStorage} не входит и нужна тестам хранилища.
+     */
+    public LongHashSet getUsersWhoLiked(long filmId) {
+        Film film = getStored(filmId);
+        synchronized (locks.forKey(filmId)) {
+            return new LongHashSet(film.getUsersWhoLiked());
+        }
+    }
+
+    @Override
+    public void forEachLike(LongPairConsumer action) {
+        films.forEach((filmId, film) -> {
+            LongHashSet users;
+            synchronized (locks.forKey(filmId)) {
+                users = new LongHashSet(film.getUsersWhoLiked());
+            }
+            users.forEach(userId -> action.accept(filmId, userId));
+        });
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return ids.stream().filter(films::containsKey).collect(Collectors.toSet());
+    }
+
     @Override
     public void ensureFilmExists(long id) throws NotFoundException {
         if (!films.containsKey(id)) {
@@ -92,11 +283,141 @@ public class InMemoryFilmStorage implements FilmStorage {
         }
     }
 
-    private long getNextId() {
-        long maxKey = films.keySet().stream()
-                .max(Long::compareTo)
-                .orElse(0L);
+    /**
+     * Применяет запись журнала или снимка при восстановлении, не записывая ее в журнал повторно.
+     * Записи о пользователях пропускаются.
+     */
+    public void replay(JournalRecord record) {
+        switch (record) {
+            case JournalRecord.FilmPut(Film film) -> {
+                idSequence.accumulateAndGet(film.getId(), Math::max);
+                Film stored = films.get(film.getId());
+                if (stored == null) {
+                    Film created = snapshot(film);
+                    created.setLikeCount(0);
+                    films.put(created.getId(), created);
+                    return;
+                }
+                synchronized (locks.forKey(film.getId())) {
+                    stored.setName(film.getName());
+                    stored.setDescription(film.getDescription());
+                    stored.setReleaseDate(film.getReleaseDate());
+                    stored.setDuration(film.getDuration());
+                    stored.setGenres(film.getGenres());
+                    stored.setMpaRating(film.getMpaRating());
+                    stored.setVersion(film.getVersion());
+                }
+            }
+            case JournalRecord.FilmDelete(long filmId) -> {
+                // удаленный id тоже занят: иначе после перезапуска его выдали бы новому фильму
+                idSequence.accumulateAndGet(filmId, Math::max);
+                films.remove(filmId);
+            }
+            case JournalRecord.LikeAdd(long filmId, long userId) -> replayLikes(filmId, film -> film.addUserWhoLiked(userId));
+            case JournalRecord.LikeRemove(long filmId, long userId) ->
+                    replayLikes(filmId, film -> film.deleteUserWhoLiked(userId));
+            case JournalRecord.LikesSnapshot(long filmId, long[] userIds) -> replayLikes(filmId, film -> {
+                for (long userId : userIds) {
+                    film.addUserWhoLiked(userId);
+                }
+            });
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Последний выданный id: пишется в заголовок снимка, потому что самый большой id мог принадлежать
+     * фильму, удаленному до снимка.
+     */
+    public long getIdSequence() {
+        return idSequence.get();
+    }
+
+    /**
+     * Не дает выдавать id не больше lastId; вызывается при загрузке снимка.
+     */
+    public void restoreIdSequence(long lastId) {
+        idSequence.accumulateAndGet(lastId, Math::max);
+    }
+
+    /**
+     * Выдает содержимое хранилища записями для снимка: каждый фильм и следом все его лайки.
+     */
+    public void writeSnapshot(Consumer<JournalRecord> out) {
+        films.forEach((filmId, film) -> {
+            Film copy;
+            long[] likes;
+            synchronized (locks.forKey(filmId)) {
+                copy = snapshot(film);
+                likes = film.getUsersWhoLiked().toArray();
+            }
+            out.accept(new JournalRecord.FilmPut(copy));
+            if (likes.length > 0) {
+                out.accept(new JournalRecord.LikesSnapshot(filmId, likes));
+            }
+        });
+    }
+
+    private void replayLikes(long filmId, Consumer<Film> action) {
+        Film film = films.get(filmId);
+        if (film == null) {
+            return;
+        }
+        synchronized (locks.forKey(filmId)) {
+            action.accept(film);
+        }
+    }
+
+    private Film getStored(long id) {
+        Film film = films.get(id);
+        if (film == null) {
+            throw new NotFoundException("Фильм не найден");
+        }
+        return film;
+    }
+
+    /**
+     * Проверяет под монитором фильма, что найденный до захвата монитора объект не удален за это время.
+     * Иначе изменение ушло бы в объект вне хранилища, а его запись в журнале - после записи об удалении,
+     * и фильм воскрес бы при восстановлении.
+     */
+    private void ensureStillStored(Film film) {
+        if (films.get(film.getId()) != film) {
+            throw new NotFoundException("Фильм не найден");
+        }
+    }
+
+    private long getStoredLikeCount(long filmId) {
+        Film film = films.get(filmId);
+        if (film == null) {
+            return 0;
+        }
+        synchronized (locks.forKey(filmId)) {
+            return film.countOfLikes();
+        }
+    }
+
+    private Film lockedSnapshot(Film film) {
+        synchronized (locks.forKey(film.getId())) {
+            return snapshot(film);
+        }
+    }
 
-        return maxKey + 1;
+    /**
+     * Копия фильма для выдачи наружу: все поля и количество лайков, но без множества лайкнувших.
+     */
+    private static Film snapshot(Film film) {
+        Film copy = new Film();
+        copy.setId(film.getId());
+        copy.setName(film.getName());
+        copy.setDescription(film.getDescription());
+        copy.setReleaseDate(film.getReleaseDate());
+        copy.setDuration(film.getDuration());
+        copy.setGenres(film.getGenres() == null ? new ArrayList<>() : new ArrayList<>(film.getGenres()));
+        copy.setMpaRating(film.getMpaRating());
+        copy.setLikeCount(film.getLikeCount());
+        copy.setVersion(film.getVersion());
+        return copy;
     }
 }
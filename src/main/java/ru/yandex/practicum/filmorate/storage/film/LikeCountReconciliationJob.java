@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Заполняет FILM.LIKE_COUNT для существующих данных при старте и периодически сверяет его с FILM_LIKES.
+ * Нужна, только если фильмы хранятся в базе: у хранилищ в памяти и вне кучи таблиц FILM и FILM_LIKES нет.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.film", havingValue = "db", matchIfMissing = true)
+@RequiredArgsConstructor
+public class LikeCountReconciliationJob {
+    private static final Logger log = LoggerFactory.getLogger(LikeCountReconciliationJob.class);
+    private final RealDbFilmStorage filmStorage;
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${filmorate.like-count.reconcile-delay-ms:3600000}")
+    public void reconcile() {
+        int fixed = filmStorage.reconcileLikeCounts();
+        if (fixed > 0) {
+            log.warn("Счетчик лайков пересчитан для {} фильмов", fixed);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Область переменной длины вне кучи: данные дописываются в конец direct-буферов по chunkBytes
+ * (запись больше куска получает отдельный буфер). Смещение записи - номер буфера в старших 32 битах
+ * и позиция в младших. Место, освобожденное при изменении или удалении, отдельно не переиспользуется,
+ * а учитывается как мертвое: уплотнение переносит живые записи в новые буферы ({@link #seal}, {@link #move})
+ * и отпускает старые ({@link #releaseBefore}).
+ */
+final class OffHeapArena {
+    private final int chunkBytes;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private ByteBuffer current;
+    private long allocatedBytes;
+    private long usedBytes;
+    private long liveBytes;
+
+    OffHeapArena(int chunkBytes) {
+        this.chunkBytes = chunkBytes;
+    }
+
+    synchronized long append(byte[] data) {
+        if (current == null || current.remaining() < data.length) {
+            current = ByteBuffer.allocateDirect(Math.max(chunkBytes, data.length));
+            allocatedBytes += current.capacity();
+            ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[grown.length - 1] = current;
+            chunks = grown;
+        }
+        int position = current.position();
+        current.put(data);
+        usedBytes += data.length;
+        liveBytes += data.length;
+        return (long) (chunks.length - 1) << 32 | position;
+    }
+
+    /**
+     * Отмечает length байт, записанных раньше, как мертвые.
+     */
+    synchronized void free(int length) {
+        liveBytes -= length;
+    }
+
+    /**
+     * Закрывает текущий буфер: следующие записи пойдут в новые буферы.
+     *
+     * @return номер первого нового буфера
+     */
+    synchronized int seal() {
+        current = null;
+        return chunks.length;
+    }
+
+    static boolean isBefore(long offset, int chunk) {
+        return (int) (offset >>> 32) < chunk;
+    }
+
+    /**
+     * Переписывает length байт по offset в конец области.
+     *
+     * @return новое смещение
+     */
+    synchronized long move(long offset, int length) {
+        byte[] data = new byte[length];
+        chunk(offset).get(position(offset), data);
+        liveBytes -= length;
+        return append(data);
+    }
+
+    /**
+     * Отпускает буферы с номерами меньше chunk: ни одна живая запись на них уже не ссылается.
+     */
+    synchronized void releaseBefore(int chunk) {
+        ByteBuffer[] released = Arrays.copyOf(chunks, chunks.length);
+        for (int i = 0; i < chunk; i++) {
+            if (released[i] != null) {
+                allocatedBytes -= released[i].capacity();
+                usedBytes -= released[i].position();
+                released[i] = null;
+            }
+        }
+        chunks = released;
+    }
+
+    ByteBuffer chunk(long offset) {
+        return chunks[(int) (offset >>> 32)];
+    }
+
+    static int position(long offset) {
+        return (int) offset;
+    }
+
+    synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Байты, занятые записями, на которые уже ничего не ссылается.
+     */
+    synchronized long getDeadBytes() {
+        return usedBytes - liveBytes;
+    }
+}
@@ -0,0 +1,490 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.OptimisticLockException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLikes;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+import ru.yandex.practicum.filmorate.util.LongPairConsumer;
+import ru.yandex.practicum.filmorate.util.StripedLocks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Хранилище фильмов вне кучи. Каждый фильм - запись фиксированной ширины в страницах из direct-буферов:
+ * id, дата выхода, длительность, id mpa-рейтинга, версия, смещение и длины данных переменной длины
+ * (название, описание, id жанров), которые лежат в {@link OffHeapArena}. Id выдаются подряд,
+ * поэтому запись фильма находится по id без отдельного индекса: страница (id - 1) >> 16, слот внутри нее.
+ * Объекты Film собираются только при выдаче наружу, названия жанров и рейтингов берутся из справочников.
+ * Лайки остаются в куче - по {@link LongHashSet} из примитивов на фильм, и только у фильмов с лайками.
+ * Как и в {@link InMemoryFilmStorage}, запись фильма читается и меняется под монитором из {@link StripedLocks}.
+ * Изменение и удаление оставляют старые данные фильма в области мертвыми; когда мертвых байт становится
+ * больше живых (и больше одного куска области), периодическое уплотнение переносит живые данные
+ * в новые куски, так что область занимает не больше примерно двух объемов живых данных.
+ */
+@Component
+@Qualifier("OffHeapFilmStorage")
+public class OffHeapFilmStorage implements FilmStorage {
+    private static final Logger log = LoggerFactory.getLogger(OffHeapFilmStorage.class);
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_RECORDS = 1 << PAGE_SHIFT;
+    private static final int RECORD_BYTES = 56;
+    private static final int ID = 0;
+    private static final int RELEASE_DATE = 8;
+    private static final int DURATION = 16;
+    private static final int MPA_ID = 20;
+    private static final int DATA_OFFSET = 24;
+    private static final int NAME_LENGTH = 32;
+    private static final int DESCRIPTION_LENGTH = 36;
+    private static final int GENRES_COUNT = 40;
+    private static final int VERSION = 48;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final int NO_MPA = 0;
+    private static final int NULL_STRING = -1;
+    private static final int ARENA_CHUNK_BYTES = 16 << 20;
+    private static final Comparator<long[]> BY_LIKES_ASC = Comparator.<long[]>comparingLong(film -> film[1])
+            .thenComparing(Comparator.<long[]>comparingLong(film -> film[0]).reversed());
+
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final OffHeapArena arena = new OffHeapArena(ARENA_CHUNK_BYTES);
+    private final Object compactionLock = new Object();
+    private final AtomicLong idSequence = new AtomicLong();
+    private final AtomicLong filmsCount = new AtomicLong();
+    private final StripedLocks locks = new StripedLocks(64);
+    private volatile ByteBuffer[] pages = new ByteBuffer[0];
+    private volatile LongHashSet[][] likers = new LongHashSet[0][];
+
+    public OffHeapFilmStorage(GenreStorage genreStorage, MpaStorage mpaStorage) {
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+    }
+
+    @Override
+    public Film create(Film film) {
+        log.debug("Вызван метод create");
+        long id = idSequence.incrementAndGet();
+        ensurePage(id);
+        film.setId(id);
+        synchronized (locks.forKey(id)) {
+            write(id, film, film.getMpaRating() == null ? NO_MPA : film.getMpaRating().getId());
+            record(id).putLong(slot(id) + VERSION, 1);
+            filmsCount.incrementAndGet();
+            return read(id);
+        }
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        return films.stream().map(this::create).toList();
+    }
+
+    @Override
+    public Film update(Film film) {
+        log.debug("Вызван метод update");
+        long id = film.getId();
+        synchronized (locks.forKey(id)) {
+            ensureStored(id);
+            long version = record(id).getLong(slot(id) + VERSION);
+            if (version != film.getVersion()) {
+                throw new OptimisticLockException(String.format("Фильм с id=%d изменен другим запросом", id));
+            }
+            int mpaId = film.getMpaRating() == null
+                    ? record(id).getInt(slot(id) + MPA_ID) : film.getMpaRating().getId();
+            write(id, film, mpaId);
+            record(id).putLong(slot(id) + VERSION, version + 1);
+            return read(id);
+        }
+    }
+
+    @Override
+    public void delete(long id) {
+        log.debug("Вызван метод delete");
+        synchronized (locks.forKey(id)) {
+            if (exists(id)) {
+                arena.free(dataLength(id));
+                record(id).putLong(slot(id) + ID, 0);
+                likersPage(id)[(int) ((id - 1) & (PAGE_RECORDS - 1))] = null;
+                filmsCount.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public Film getFilm(long id) {
+        synchronized (locks.forKey(id)) {
+            ensureStored(id);
+            return read(id);
+        }
+    }
+
+    @Override
+    public List<Film> getFilms() {
+        List<Film> result = new ArrayList<>();
+        forEachFilm(result::add);
+        return result;
+    }
+
+    @Override
+    public List<Film> getFilmsPage(long afterId, int limit) {
+        List<Film> result = new ArrayList<>(limit);
+        long lastId = idSequence.get();
+        for (long id = Math.max(afterId, 0) + 1; id <= lastId && result.size() < limit; id++) {
+            Film film = readIfExists(id);
+            if (film != null) {
+                result.add(film);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachFilm(Consumer<Film> action) {
+        long lastId = idSequence.get();
+        for (long id = 1; id <= lastId; id++) {
+            Film film = readIfExists(id);
+            if (film != null) {
+                action.accept(film);
+            }
+        }
+    }
+
+    /**
+     * Самые популярные фильмы выбираются кучей пар (id, лайки) прямо по записям,
+     * а объекты Film собираются только для попавших в результат. В контракт {@link FilmStorage} не входит:
+     * /films/popular отвечает индекс популярности в сервисе, а этот метод проверяет учет лайков в тестах
+     * и служит топом-10 в замере нагрузки.
+     */
+    public List<Film> getPopularFilms(long count) {
+        int limit = (int) Math.min(count, filmsCount.get());
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<long[]> best = new PriorityQueue<>(limit, BY_LIKES_ASC);
+        long lastId = idSequence.get();
+        for (long id = 1; id <= lastId; id++) {
+            long likes;
+            synchronized (locks.forKey(id)) {
+                if (!exists(id)) {
+                    continue;
+                }
+                likes = likeCount(id);
+            }
+            if (best.size() < limit) {
+                best.add(new long[]{id, likes});
+            } else if (likes > best.peek()[1]) {
+                // id идут по возрастанию, поэтому при равенстве лайков уже лежащий в куче фильм лучше
+                best.poll();
+                best.add(new long[]{id, likes});
+            }
+        }
+        List<long[]> top = new ArrayList<>(best);
+        top.sort(BY_LIKES_ASC.reversed());
+        return top.stream().map(film -> readIfExists(film[0])).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        List<Film> result = new ArrayList<>(ids.size());
+        ids.forEach(id -> {
+            Film film = readIfExists(id);
+            if (film != null) {
+                result.add(film);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public Map<Long, Long> getLikeCounts() {
+        Map<Long, Long> likeCounts = new HashMap<>((int) filmsCount.get() * 2);
+        long lastId = idSequence.get();
+        for (long id = 1; id <= lastId; id++) {
+            synchronized (locks.forKey(id)) {
+                if (exists(id)) {
+                    likeCounts.put(id, likeCount(id));
+                }
+            }
+        }
+        return likeCounts;
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        synchronized (locks.forKey(filmId)) {
+            ensureStored(filmId);
+            LongHashSet[] page = likersPage(filmId);
+            int index = (int) ((filmId - 1) & (PAGE_RECORDS - 1));
+            if (page[index] == null) {
+                page[index] = new LongHashSet();
+            }
+            return page[index].add(userId);
+        }
+    }
+
+    @Override
+    public boolean removeLike(long filmId, long userId) {
+        synchronized (locks.forKey(filmId)) {
+            ensureStored(filmId);
+            LongHashSet users = likersPage(filmId)[(int) ((filmId - 1) & (PAGE_RECORDS - 1))];
+            return users != null && users.remove(userId);
+        }
+    }
+
+    @Override
+    public AppliedLikes applyLikes(List<FilmLikes> added, List<FilmLikes> removed) {
+        Map<Long, Long> likeCounts = new HashMap<>();
+        List<FilmLikes> actuallyAdded = added.stream()
+                .filter(like -> addLike(like.getFilmId(), like.getUserId()))
+                .toList();
+        List<FilmLikes> actuallyRemoved = removed.stream()
+                .filter(like -> removeLike(like.getFilmId(), like.getUserId()))
+                .toList();
+        added.forEach(like -> likeCounts.put(like.getFilmId(), getStoredLikeCount(like.getFilmId())));
+        removed.forEach(like -> likeCounts.put(like.getFilmId(), getStoredLikeCount(like.getFilmId())));
+        return new AppliedLikes(actuallyAdded, actuallyRemoved, likeCounts);
+    }
+
+    @Override
+    public void forEachLike(LongPairConsumer action) {
+        long lastId = idSequence.get();
+        for (long id = 1; id <= lastId; id++) {
+            long[] users;
+            synchronized (locks.forKey(id)) {
+                LongHashSet stored = exists(id) ? likersPage(id)[(int) ((id - 1) & (PAGE_RECORDS - 1))] : null;
+                if (stored == null) {
+                    continue;
+                }
+                users = stored.toArray();
+            }
+            Arrays.sort(users);
+            for (long userId : users) {
+                action.accept(id, userId);
+            }
+        }
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return ids.stream().filter(id -> {
+            synchronized (locks.forKey(id)) {
+                return exists(id);
+            }
+        }).collect(Collectors.toSet());
+    }
+
+    @Override
+    public void ensureFilmExists(long id) throws NotFoundException {
+        synchronized (locks.forKey(id)) {
+            if (!exists(id)) {
+                throw new NotFoundException("Фильм не существует");
+            }
+        }
+    }
+
+    /**
+     * Сколько байт вне кучи занято страницами записей и областью данных переменной длины.
+     */
+    public long getOffHeapBytes() {
+        return (long) pages.length * PAGE_RECORDS * RECORD_BYTES + arena.getAllocatedBytes();
+    }
+
+    /**
+     * Уплотняет область данных, если мертвых байт в ней больше живых и больше одного куска.
+     */
+    @Scheduled(fixedDelayString = "${filmorate.storage.offheap.compaction-delay-ms:60000}")
+    public void compactIfNeeded() {
+        long deadBytes = arena.getDeadBytes();
+        if (deadBytes > arena.getLiveBytes() && deadBytes > ARENA_CHUNK_BYTES) {
+            compact();
+        }
+    }
+
+    /**
+     * Переносит данные живых фильмов в новые куски области и отпускает старые.
+     * Фильмы переносятся по одному под своим монитором, поэтому чтения и изменения не останавливаются:
+     * все, что пишется во время уплотнения, уже попадает в новые куски.
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            long before = getOffHeapBytes();
+            int firstFresh = arena.seal();
+            long lastId = idSequence.get();
+            for (long id = 1; id <= lastId; id++) {
+                synchronized (locks.forKey(id)) {
+                    if (!exists(id)) {
+                        continue;
+                    }
+                    int slot = slot(id);
+                    long offset = record(id).getLong(slot + DATA_OFFSET);
+                    if (OffHeapArena.isBefore(offset, firstFresh)) {
+                        record(id).putLong(slot + DATA_OFFSET, arena.move(offset, dataLength(id)));
+                    }
+                }
+            }
+            arena.releaseBefore(firstFresh);
+            log.info("Область данных фильмов вне кучи уплотнена: было {} байт, стало {}", before, getOffHeapBytes());
+        }
+    }
+
+    private synchronized void ensurePage(long id) {
+        int page = (int) ((id - 1) >>> PAGE_SHIFT);
+        if (page < pages.length) {
+            return;
+        }
+        ByteBuffer[] grownPages = Arrays.copyOf(pages, page + 1);
+        LongHashSet[][] grownLikers = Arrays.copyOf(likers, page + 1);
+        for (int i = pages.length; i <= page; i++) {
+            grownPages[i] = ByteBuffer.allocateDirect(PAGE_RECORDS * RECORD_BYTES);
+            grownLikers[i] = new LongHashSet[PAGE_RECORDS];
+        }
+        likers = grownLikers;
+        pages = grownPages;
+    }
+
+    private ByteBuffer record(long id) {
+        return pages[(int) ((id - 1) >>> PAGE_SHIFT)];
+    }
+
+    private static int slot(long id) {
+        return (int) ((id - 1) & (PAGE_RECORDS - 1)) * RECORD_BYTES;
+    }
+
+    private LongHashSet[] likersPage(long id) {
+        return likers[(int) ((id - 1) >>> PAGE_SHIFT)];
+    }
+
+    private boolean exists(long id) {
+        return id > 0 && id <= idSequence.get() && (id - 1) >>> PAGE_SHIFT < pages.length
+                && record(id).getLong(slot(id) + ID) == id;
+    }
+
+    private void ensureStored(long id) {
+        if (!exists(id)) {
+            throw new NotFoundException("Фильм не найден");
+        }
+    }
+
+    private int dataLength(long id) {
+        ByteBuffer page = record(id);
+        int slot = slot(id);
+        return Math.max(page.getInt(slot + NAME_LENGTH), 0) + Math.max(page.getInt(slot + DESCRIPTION_LENGTH), 0)
+                + page.getInt(slot + GENRES_COUNT) * Integer.BYTES;
+    }
+
+    private long likeCount(long id) {
+        LongHashSet users = likersPage(id)[(int) ((id - 1) & (PAGE_RECORDS - 1))];
+        return users == null ? 0 : users.size();
+    }
+
+    private long getStoredLikeCount(long filmId) {
+        synchronized (locks.forKey(filmId)) {
+            return exists(filmId) ? likeCount(filmId) : 0;
+        }
+    }
+
+    private Film readIfExists(long id) {
+        synchronized (locks.forKey(id)) {
+            return exists(id) ? read(id) : null;
+        }
+    }
+
+    /**
+     * Пишет фильм в запись: название, описание и id жанров одним куском дописываются в область данных,
+     * прежние данные фильма (если он уже был записан) становятся мертвыми.
+     */
+    private void write(long id, Film film, int mpaId) {
+        if (exists(id)) {
+            arena.free(dataLength(id));
+        }
+        byte[] name = film.getName() == null ? null : film.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] description = film.getDescription() == null
+                ? null : film.getDescription().getBytes(StandardCharsets.UTF_8);
+        List<Genre> genres = film.getGenres() == null ? List.of() : film.getGenres();
+        int nameLength = name == null ? 0 : name.length;
+        int descriptionLength = description == null ? 0 : description.length;
+        ByteBuffer data = ByteBuffer.allocate(nameLength + descriptionLength + genres.size() * Integer.BYTES);
+        if (name != null) {
+            data.put(name);
+        }
+        if (description != null) {
+            data.put(description);
+        }
+        genres.forEach(genre -> data.putInt(genre.getId()));
+
+        ByteBuffer page = record(id);
+        int slot = slot(id);
+        page.putLong(slot + ID, id);
+        page.putLong(slot + RELEASE_DATE, film.getReleaseDate() == null ? NO_DATE : film.getReleaseDate().toEpochDay());
+        page.putInt(slot + DURATION, film.getDuration());
+        page.putInt(slot + MPA_ID, mpaId);
+        page.putLong(slot + DATA_OFFSET, arena.append(data.array()));
+        page.putInt(slot + NAME_LENGTH, name == null ? NULL_STRING : name.length);
+        page.putInt(slot + DESCRIPTION_LENGTH, description == null ? NULL_STRING : description.length);
+        page.putInt(slot + GENRES_COUNT, genres.size());
+    }
+
+    private Film read(long id) {
+        ByteBuffer page = record(id);
+        int slot = slot(id);
+        long offset = page.getLong(slot + DATA_OFFSET);
+        ByteBuffer data = arena.chunk(offset);
+        int position = OffHeapArena.position(offset);
+
+        Film film = new Film();
+        film.setId(id);
+        int nameLength = page.getInt(slot + NAME_LENGTH);
+        film.setName(readString(data, position, nameLength));
+        position += Math.max(nameLength, 0);
+        int descriptionLength = page.getInt(slot + DESCRIPTION_LENGTH);
+        film.setDescription(readString(data, position, descriptionLength));
+        position += Math.max(descriptionLength, 0);
+        int genresCount = page.getInt(slot + GENRES_COUNT);
+        List<Genre> genres = new ArrayList<>(genresCount);
+        for (int i = 0; i < genresCount; i++) {
+            genres.add(genreStorage.get(data.getInt(position + i * Integer.BYTES)));
+        }
+        film.setGenres(genres);
+
+        long releaseDate = page.getLong(slot + RELEASE_DATE);
+        film.setReleaseDate(releaseDate == NO_DATE ? null : LocalDate.ofEpochDay(releaseDate));
+        film.setDuration(page.getInt(slot + DURATION));
+        int mpaId = page.getInt(slot + MPA_ID);
+        film.setMpaRating(mpaId == NO_MPA ? null : mpaStorage.get(mpaId));
+        film.setLikeCount(likeCount(id));
+        film.setVersion(page.getLong(slot + VERSION));
+        return film;
+    }
+
+    private static String readString(ByteBuffer data, int position, int length) {
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        data.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
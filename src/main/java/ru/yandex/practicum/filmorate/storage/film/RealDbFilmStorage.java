@@ -2,24 +2,43 @@ package ru.yandex.practicum.filmorate.storage.film;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.OptimisticLockException;
 import ru.yandex.practicum.filmorate.mappers.film.FilmRowMapper;
-import ru.yandex.practicum.filmorate.mappers.genre.GenreRowMapper;
-import ru.yandex.practicum.filmorate.mappers.mpa.MpaRowMapper;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLikes;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+import ru.yandex.practicum.filmorate.util.LongPairConsumer;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Repository
 @RequiredArgsConstructor
@@ -27,35 +46,56 @@ import java.util.Objects;
 public class RealDbFilmStorage implements FilmStorage {
     private final JdbcTemplate jdbc;
     private final FilmRowMapper mapper;
-    private final GenreRowMapper genreRowMapper;
-    private final MpaRowMapper mpaRowMapper;
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+
+    private static final int STREAM_FETCH_SIZE = 500;
+    // версия новой строки - DEFAULT колонки VERSION
+    private static final long INITIAL_VERSION = 1;
 
     private static final String INSERT_NEW_FILM = "INSERT INTO PUBLIC.\"FILM\" (NAME, DESCRIPTION, DURATION, RELEASE_DATE, MPA_RATING_ID) VALUES(?, ?, ?, ?, ?)";
     private static final String INSERT_FILM_GENRES = "INSERT INTO public.\"FILM_GENRES\" (FILM_ID, GENRE_ID) VALUES(?, ?)";
-    private static final String SELECT_GENRES_OF_FILM = "SELECT g.Id, g.Name FROM public.\"GENRE\" g JOIN public.\"FILM_GENRES\" fg ON (g.Id = fg.GENRE_ID) " +
-            "WHERE fg.FILM_ID = ?";
-    private static final String SELECT_USER_IDS_WHO_LIKED = "SELECT fl.User_Id FROM public.\"FILM_LIKES\" fl " +
-            "WHERE fl.FILM_ID = ?";
-    private static final String SELECT_MPA_RATING = "SELECT r.Id, r.Name FROM public.\"MPA_RATING\" r " +
-            "WHERE r.Id = ?";
-    private static final String UPDATE_FILM_WITHOUT_MPA = "UPDATE public.\"FILM\" SET name = ?, description = ?, duration = ?, release_date = ? WHERE id = ?";
-    private static final String UPDATE_FILM = "UPDATE public.\"FILM\" SET name = ?, description = ?, duration = ?, release_date = ?, mpa_rating_id = ? WHERE id = ?";
+    private static final String SELECT_GENRES_OF_FILM = "SELECT fg.GENRE_ID FROM public.\"FILM_GENRES\" fg WHERE fg.FILM_ID = ?";
+    private static final String SELECT_ALL_LIKES = "SELECT fl.FILM_ID, fl.USER_ID FROM public.\"FILM_LIKES\" fl";
+    private static final String SELECT_GENRES_OF_ALL_FILMS = "SELECT fg.FILM_ID, fg.GENRE_ID FROM public.\"FILM_GENRES\" fg";
+    private static final String SELECT_GENRES_OF_FILMS = SELECT_GENRES_OF_ALL_FILMS + " WHERE fg.FILM_ID IN (%s)";
+    private static final String UPDATE_FILM_WITHOUT_MPA = "UPDATE public.\"FILM\" SET name = ?, description = ?, duration = ?, release_date = ?, " +
+            "version = version + 1 WHERE id = ? AND version = ?";
+    private static final String UPDATE_FILM = "UPDATE public.\"FILM\" SET name = ?, description = ?, duration = ?, release_date = ?, mpa_rating_id = ?, " +
+            "version = version + 1 WHERE id = ? AND version = ?";
     private static final String CLEAR_GENRES_OF_FILM = "DELETE FROM public.\"FILM_GENRES\" WHERE FILM_ID = ?";
-    private static final String ADD_GENRE_TO_FILM = "INSERT INTO public.\"FILM_GENRES\" (FILM_ID, GENRE_ID) VALUES(?, ?)";
+    private static final String DELETE_FILM_GENRE = "DELETE FROM public.\"FILM_GENRES\" WHERE FILM_ID = ? AND GENRE_ID = ?";
+    private static final String SELECT_FILM_STATE = "SELECT f.MPA_RATING_ID, f.LIKE_COUNT, fg.GENRE_ID " +
+            "FROM public.\"FILM\" f LEFT JOIN public.\"FILM_GENRES\" fg ON (f.Id = fg.FILM_ID) WHERE f.Id = ?";
     private static final String CLEAR_LIKES_OF_FILM = "DELETE FROM public.\"FILM_LIKES\" WHERE FILM_ID = ?";
     private static final String ADD_LIKE_TO_FILM = "INSERT INTO public.\"FILM_LIKES\" (FILM_ID, USER_ID) VALUES(?, ?)";
+    private static final String REMOVE_LIKE_FROM_FILM = "DELETE FROM public.\"FILM_LIKES\" WHERE FILM_ID = ? AND USER_ID = ?";
     private static final String DELETE_FILM = "DELETE FROM public.\"FILM\" WHERE id = ?";
-    private static final String SELECT_FILM = "SELECT f.*, r.Name mpa_rating_name FROM public.\"FILM\" f LEFT JOIN public.\"MPA_RATING\" r ON (f.mpa_rating_id = r.Id) WHERE f.id = ?";
-    private static final String SELECT_ALL_FILMS = "SELECT f.*, r.Name mpa_rating_name FROM public.\"FILM\" f LEFT JOIN public.\"MPA_RATING\" r ON (f.mpa_rating_id =  r.Id)";
-    private static final String SELECT_TOP_FILMS_ORDERED_BY_LIKES = "SELECT f.Id, f.Name, f.Description, f.Release_Date, f.Duration, f.mpa_rating_id, r.Name mpa_rating_name, count(fl.user_id) count_likes \n" +
-            "FROM public.\"FILM\" f LEFT JOIN public.\"MPA_RATING\" r ON (f.mpa_rating_id =  r.Id) \n" +
-            "LEFT JOIN public.\"FILM_LIKES\" fl ON (f.Id = fl.film_id) \n" +
-            "GROUP BY f.Id, f.Name, f.Description, f.Release_Date, f.Duration, r.Name \n" +
-            "ORDER BY count_likes desc LIMIT ?";
+    private static final String SELECT_FILM = "SELECT f.* FROM public.\"FILM\" f WHERE f.id = ?";
+    private static final String SELECT_ALL_FILMS = "SELECT f.* FROM public.\"FILM\" f";
+    private static final String SELECT_FILMS_PAGE = SELECT_ALL_FILMS + " WHERE f.id > ? ORDER BY f.id LIMIT ?";
+    private static final String SELECT_ALL_FILMS_WITH_GENRES = "SELECT f.*, fg.GENRE_ID " +
+            "FROM public.\"FILM\" f LEFT JOIN public.\"FILM_GENRES\" fg ON (f.Id = fg.FILM_ID) " +
+            "ORDER BY f.Id, fg.GENRE_ID";
+    private static final String SELECT_FILMS_BY_IDS = SELECT_ALL_FILMS + " WHERE f.id IN (%s)";
+    private static final String SELECT_LIKE_COUNTS = "SELECT f.Id, count(fl.USER_ID) count_likes FROM public.\"FILM\" f " +
+            "LEFT JOIN public.\"FILM_LIKES\" fl ON (f.Id = fl.FILM_ID) GROUP BY f.Id";
+    private static final String INCREMENT_LIKE_COUNT = "UPDATE public.\"FILM\" SET LIKE_COUNT = LIKE_COUNT + 1 WHERE id = ?";
+    private static final String DECREMENT_LIKE_COUNT = "UPDATE public.\"FILM\" SET LIKE_COUNT = LIKE_COUNT - 1 WHERE id = ?";
+    private static final String INSERT_LIKE_IF_ABSENT = "INSERT INTO public.\"FILM_LIKES\" (FILM_ID, USER_ID) " +
+            "SELECT CAST(? AS BIGINT), CAST(? AS BIGINT) WHERE NOT EXISTS (SELECT 1 FROM public.\"FILM_LIKES\" WHERE FILM_ID = ? AND USER_ID = ?)";
+    private static final String RECOUNT_LIKES_OF_FILM = "UPDATE public.\"FILM\" f " +
+            "SET LIKE_COUNT = (SELECT count(*) FROM public.\"FILM_LIKES\" fl WHERE fl.FILM_ID = f.Id) WHERE f.Id = ?";
+    private static final String SELECT_LIKE_COUNTS_BY_IDS = "SELECT Id, LIKE_COUNT FROM public.\"FILM\" WHERE Id = ANY(?)";
+    private static final String SELECT_EXISTING_IDS = "SELECT Id FROM public.\"FILM\" WHERE Id = ANY(?)";
+    private static final String RECONCILE_LIKE_COUNTS = "UPDATE public.\"FILM\" f " +
+            "SET LIKE_COUNT = (SELECT count(*) FROM public.\"FILM_LIKES\" fl WHERE fl.FILM_ID = f.Id) " +
+            "WHERE LIKE_COUNT <> (SELECT count(*) FROM public.\"FILM_LIKES\" fl WHERE fl.FILM_ID = f.Id)";
     private static final String CHECK_IF_FILM_EXISTS = "SELECT count(*) FROM public.\"FILM\" WHERE id = ?";
 
 
     @Override
+    @Transactional
     public Film create(Film film) {
         KeyHolder keyHolder = new GeneratedKeyHolder();
 
@@ -72,47 +112,131 @@ public class RealDbFilmStorage implements FilmStorage {
         // Получаем сгенерированный ID
         long generatedId = Objects.requireNonNull(keyHolder.getKey()).longValue();
 
-        film.getGenres().forEach(genre -> {
-            jdbc.update(INSERT_FILM_GENRES, generatedId, genre.getId());
-        });
-
-        List<Genre> genres = jdbc.query(SELECT_GENRES_OF_FILM, genreRowMapper, generatedId);
-        film.setGenres(genres);
+        insertGenres(generatedId, film.getGenres());
 
-        MpaRating mpaRating = jdbc.queryForObject(SELECT_MPA_RATING, mpaRowMapper, film.getMpaRating() == null ? 1 : film.getMpaRating().getId());
-        film.setMpaRating(mpaRating);
+        // названия жанров и рейтинга подставляем из справочников, без повторного чтения из базы
+        film.setGenres(resolveGenres(film.getGenres()));
+        film.setMpaRating(mpaStorage.get(film.getMpaRating() == null ? 1 : film.getMpaRating().getId()));
 
         film.setId(generatedId);
+        film.setVersion(INITIAL_VERSION);
         return film;
     }
 
     @Override
+    @Transactional
+    public List<Film> createAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbc.batchUpdate(connection -> connection.prepareStatement(INSERT_NEW_FILM, new String[]{"ID"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Film film = films.get(i);
+                        ps.setString(1, film.getName());
+                        ps.setString(2, film.getDescription());
+                        ps.setInt(3, film.getDuration());
+                        ps.setObject(4, film.getReleaseDate());
+                        ps.setObject(5, film.getMpaRating() == null ? 1 : film.getMpaRating().getId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return films.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        List<Object[]> genreArgs = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            film.setId(((Number) keys.get(i).values().iterator().next()).longValue());
+            film.setVersion(INITIAL_VERSION);
+            if (!CollectionUtils.isEmpty(film.getGenres())) {
+                film.getGenres().forEach(genre -> genreArgs.add(new Object[]{film.getId(), genre.getId()}));
+            }
+        }
+        if (!genreArgs.isEmpty()) {
+            jdbc.batchUpdate(INSERT_FILM_GENRES, genreArgs);
+        }
+        return films;
+    }
+
+    /**
+     * Обновляет фильм, если его версия в базе все еще film.getVersion(), и увеличивает версию.
+     * UPDATE с условием по версии блокирует строку до конца транзакции, поэтому конкурирующее
+     * обновление той же версии дождется ее и не найдет строку - {@link OptimisticLockException}.
+     * Жанры не перезаписываются целиком: одним запросом читаются текущие жанры (вместе с рейтингом
+     * и счетчиком лайков), и удаляются/добавляются только отличия. Лайки не трогаются.
+     * Результат собирается из переданного фильма и прочитанного состояния, без повторного чтения.
+     */
+    @Override
+    @Transactional
     public Film update(Film film) {
+        int updated;
         if (film.getMpaRating() == null) {
-            jdbc.update(UPDATE_FILM_WITHOUT_MPA, film.getName(), film.getDescription(), film.getDuration(), film.getReleaseDate(), film.getId());
+            updated = jdbc.update(UPDATE_FILM_WITHOUT_MPA, film.getName(), film.getDescription(), film.getDuration(),
+                    film.getReleaseDate(), film.getId(), film.getVersion());
         } else {
-            jdbc.update(UPDATE_FILM, film.getName(), film.getDescription(), film.getDuration(), film.getReleaseDate(), film.getMpaRating().getId(), film.getId());
+            updated = jdbc.update(UPDATE_FILM, film.getName(), film.getDescription(), film.getDuration(),
+                    film.getReleaseDate(), film.getMpaRating().getId(), film.getId(), film.getVersion());
+        }
+        if (updated == 0) {
+            ensureFilmExists(film.getId());
+            throw new OptimisticLockException(String.format("Фильм с id=%d изменен другим запросом", film.getId()));
         }
 
-        jdbc.update(CLEAR_GENRES_OF_FILM, film.getId());
+        List<FilmStateRow> state = jdbc.query(SELECT_FILM_STATE, (resultSet, rowNum) -> {
+            int mpaRatingId = resultSet.getInt("mpa_rating_id");
+            Integer mpa = resultSet.wasNull() ? null : mpaRatingId;
+            int genreId = resultSet.getInt("genre_id");
+            return new FilmStateRow(mpa, resultSet.getLong("like_count"), resultSet.wasNull() ? null : genreId);
+        }, film.getId());
 
-        if (!CollectionUtils.isEmpty(film.getGenres())) {
-            film.getGenres().forEach(genre -> {
-                jdbc.update(ADD_GENRE_TO_FILM, film.getId(), genre.getId());
-            });
+        Set<Integer> currentGenres = new HashSet<>();
+        state.forEach(row -> {
+            if (row.genreId() != null) {
+                currentGenres.add(row.genreId());
+            }
+        });
+        Set<Integer> newGenres = CollectionUtils.isEmpty(film.getGenres()) ? Set.of()
+                : film.getGenres().stream().map(Genre::getId).collect(Collectors.toSet());
+        List<Object[]> deleted = currentGenres.stream()
+                .filter(genreId -> !newGenres.contains(genreId))
+                .map(genreId -> new Object[]{film.getId(), genreId})
+                .toList();
+        List<Object[]> inserted = newGenres.stream()
+                .filter(genreId -> !currentGenres.contains(genreId))
+                .map(genreId -> new Object[]{film.getId(), genreId})
+                .toList();
+        if (!deleted.isEmpty()) {
+            jdbc.batchUpdate(DELETE_FILM_GENRE, deleted);
         }
-
-        jdbc.update(CLEAR_LIKES_OF_FILM, film.getId());
-        if (!CollectionUtils.isEmpty(film.getUsersWhoLiked())) {
-            film.getUsersWhoLiked().forEach(userId -> {
-                jdbc.update(ADD_LIKE_TO_FILM, film.getId(), userId);
-            });
+        if (!inserted.isEmpty()) {
+            jdbc.batchUpdate(INSERT_FILM_GENRES, inserted);
         }
 
-        return getFilm(film.getId());
+        Film result = new Film();
+        result.setId(film.getId());
+        result.setName(film.getName());
+        result.setDescription(film.getDescription());
+        result.setReleaseDate(film.getReleaseDate());
+        result.setDuration(film.getDuration());
+        result.setVersion(film.getVersion() + 1);
+        result.setGenres(newGenres.stream()
+                .sorted()
+                .map(genreStorage::get)
+                .collect(Collectors.toList()));
+        Integer mpaRatingId = state.isEmpty() ? null : state.getFirst().mpaRatingId();
+        result.setMpaRating(mpaRatingId == null ? new MpaRating() : mpaStorage.get(mpaRatingId));
+        result.setLikeCount(state.isEmpty() ? 0 : state.getFirst().likeCount());
+        return result;
     }
 
     @Override
+    @Transactional
     public void delete(long id) {
         jdbc.update(CLEAR_GENRES_OF_FILM, id);
         jdbc.update(CLEAR_LIKES_OF_FILM, id);
@@ -127,37 +251,152 @@ public class RealDbFilmStorage implements FilmStorage {
         }
 
         Film film = films.getFirst();
-        List<Genre> genres = jdbc.query(SELECT_GENRES_OF_FILM, genreRowMapper, film.getId());
+        List<Genre> genres = new ArrayList<>();
+        jdbc.query(SELECT_GENRES_OF_FILM, resultSet -> {
+            genres.add(genreStorage.get(resultSet.getInt("genre_id")));
+        }, film.getId());
         film.setGenres(genres);
-        List<Long> userIds = jdbc.queryForList(SELECT_USER_IDS_WHO_LIKED, Long.class, film.getId());
-        film.setUsersWhoLiked(new HashSet<>(userIds));
         return film;
     }
 
     @Override
     public List<Film> getFilms() {
         List<Film> films = jdbc.query(SELECT_ALL_FILMS, mapper);
-        films.forEach(film -> {
-            List<Genre> genres = jdbc.query(SELECT_GENRES_OF_FILM, genreRowMapper, film.getId());
-            film.setGenres(genres);
-            List<Long> userIds = jdbc.queryForList(SELECT_USER_IDS_WHO_LIKED, Long.class, film.getId());
-            film.setUsersWhoLiked(new HashSet<>(userIds));
-        });
+        // весь каталог: жанры забираем целиком, без фильтра по id; лайки не загружаются, только LIKE_COUNT
+        fillGenres(films, SELECT_GENRES_OF_ALL_FILMS);
         return films;
     }
 
     @Override
-    public List<Film> getPopularFilms(long count) {
-        List<Film> films = jdbc.query(SELECT_TOP_FILMS_ORDERED_BY_LIKES, mapper, count);
-        films.forEach(film -> {
-            List<Genre> genres = jdbc.query(SELECT_GENRES_OF_FILM, genreRowMapper, film.getId());
-            film.setGenres(genres);
-            List<Long> userIds = jdbc.queryForList(SELECT_USER_IDS_WHO_LIKED, Long.class, film.getId());
-            film.setUsersWhoLiked(new HashSet<>(userIds));
-        });
+    public List<Film> getFilmsPage(long afterId, int limit) {
+        List<Film> films = jdbc.query(SELECT_FILMS_PAGE, mapper, afterId, limit);
+        fillGenres(films);
         return films;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachFilm(Consumer<Film> action) {
+        FilmWithGenresCollector collector = new FilmWithGenresCollector(action);
+        jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SELECT_ALL_FILMS_WITH_GENRES,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, collector);
+        collector.finish();
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        List<Film> films = jdbc.query(String.format(SELECT_FILMS_BY_IDS, placeholders), mapper, ids.toArray());
+        fillGenres(films);
+
+        Map<Long, Film> filmsById = new HashMap<>(films.size() * 2);
+        films.forEach(film -> filmsById.put(film.getId(), film));
+        return ids.stream().map(filmsById::get).filter(Objects::nonNull).toList();
+    }
+
+    @Override
+    public Map<Long, Long> getLikeCounts() {
+        Map<Long, Long> likeCounts = new HashMap<>();
+        jdbc.query(SELECT_LIKE_COUNTS, resultSet -> {
+            likeCounts.put(resultSet.getLong("id"), resultSet.getLong("count_likes"));
+        });
+        return likeCounts;
+    }
+
+    @Override
+    @Transactional
+    public boolean addLike(long filmId, long userId) {
+        try {
+            jdbc.update(ADD_LIKE_TO_FILM, filmId, userId);
+        } catch (DuplicateKeyException e) {
+            // лайк уже стоит, счетчик не трогаем
+            return false;
+        }
+        jdbc.update(INCREMENT_LIKE_COUNT, filmId);
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public boolean removeLike(long filmId, long userId) {
+        if (jdbc.update(REMOVE_LIKE_FROM_FILM, filmId, userId) == 0) {
+            return false;
+        }
+        jdbc.update(DECREMENT_LIKE_COUNT, filmId);
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public AppliedLikes applyLikes(List<FilmLikes> added, List<FilmLikes> removed) {
+        List<FilmLikes> actuallyAdded = batchUpdateChanged(INSERT_LIKE_IF_ABSENT, added,
+                like -> new Object[]{like.getFilmId(), like.getUserId(), like.getFilmId(), like.getUserId()});
+        List<FilmLikes> actuallyRemoved = batchUpdateChanged(REMOVE_LIKE_FROM_FILM, removed,
+                like -> new Object[]{like.getFilmId(), like.getUserId()});
+
+        Set<Long> filmIds = new HashSet<>();
+        actuallyAdded.forEach(like -> filmIds.add(like.getFilmId()));
+        actuallyRemoved.forEach(like -> filmIds.add(like.getFilmId()));
+        if (filmIds.isEmpty()) {
+            return new AppliedLikes(actuallyAdded, actuallyRemoved, Map.of());
+        }
+        jdbc.batchUpdate(RECOUNT_LIKES_OF_FILM, filmIds.stream().map(id -> new Object[]{id}).toList());
+
+        Map<Long, Long> likeCounts = new HashMap<>(filmIds.size() * 2);
+        jdbc.query(SELECT_LIKE_COUNTS_BY_IDS, resultSet -> {
+            likeCounts.put(resultSet.getLong("id"), resultSet.getLong("like_count"));
+        }, (Object) filmIds.toArray(new Long[0]));
+        return new AppliedLikes(actuallyAdded, actuallyRemoved, likeCounts);
+    }
+
+    /**
+     * Выполняет sql пачкой по записи на лайк и возвращает лайки, для которых изменилась хотя бы одна строка.
+     */
+    private List<FilmLikes> batchUpdateChanged(String sql, List<FilmLikes> likes, Function<FilmLikes, Object[]> args) {
+        if (likes.isEmpty()) {
+            return List.of();
+        }
+        int[] updated = jdbc.batchUpdate(sql, likes.stream().map(args).toList());
+        List<FilmLikes> changed = new ArrayList<>();
+        for (int i = 0; i < likes.size(); i++) {
+            if (updated[i] > 0) {
+                changed.add(likes.get(i));
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public void forEachLike(LongPairConsumer action) {
+        jdbc.query(SELECT_ALL_LIKES, resultSet -> {
+            action.accept(resultSet.getLong(1), resultSet.getLong(2));
+        });
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(jdbc.queryForList(SELECT_EXISTING_IDS, Long.class, (Object) ids.toArray(new Long[0])));
+    }
+
+    /**
+     * Пересчитывает FILM.LIKE_COUNT по таблице FILM_LIKES для фильмов, где счетчик разошелся с лайками.
+     *
+     * @return количество исправленных фильмов
+     */
+    public int reconcileLikeCounts() {
+        return jdbc.update(RECONCILE_LIKE_COUNTS);
+    }
+
     @Override
     public void ensureFilmExists(long id) throws NotFoundException {
         long count = jdbc.queryForObject(CHECK_IF_FILM_EXISTS, Long.class, id);
@@ -165,4 +404,101 @@ public class RealDbFilmStorage implements FilmStorage {
             throw new NotFoundException(String.format("Фильм с id=%d не найден", id));
         }
     }
+
+    /**
+     * Заменяет жанры с одними id на жанры из справочника, по возрастанию id.
+     */
+    private List<Genre> resolveGenres(List<Genre> genres) {
+        if (CollectionUtils.isEmpty(genres)) {
+            return new ArrayList<>();
+        }
+        return genres.stream()
+                .map(genre -> genreStorage.get(genre.getId()))
+                .sorted(Comparator.comparingInt(Genre::getId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Вставляет связи фильма с жанрами одним JDBC-батчем.
+     */
+    private void insertGenres(long filmId, List<Genre> genres) {
+        if (CollectionUtils.isEmpty(genres)) {
+            return;
+        }
+        List<Object[]> batchArgs = genres.stream()
+                .map(genre -> new Object[]{filmId, genre.getId()})
+                .toList();
+        jdbc.batchUpdate(INSERT_FILM_GENRES, batchArgs);
+    }
+
+    /**
+     * Догружает жанры для страницы фильмов одним запросом с IN по id фильмов.
+     * Лайки не читаются: количество уже пришло в колонке LIKE_COUNT.
+     */
+    private void fillGenres(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(films.size(), "?"));
+        Object[] ids = films.stream().map(Film::getId).toArray();
+        fillGenres(films, String.format(SELECT_GENRES_OF_FILMS, placeholders), ids);
+    }
+
+    /**
+     * Выполняет один запрос на жанры и раскладывает строки по фильмам в памяти.
+     */
+    private void fillGenres(List<Film> films, String genresSql, Object... args) {
+        Map<Long, Film> filmsById = new HashMap<>(films.size() * 2);
+        films.forEach(film -> {
+            film.setGenres(new ArrayList<>());
+            filmsById.put(film.getId(), film);
+        });
+
+        jdbc.query(genresSql, resultSet -> {
+            Film film = filmsById.get(resultSet.getLong("film_id"));
+            if (film != null) {
+                film.getGenres().add(genreStorage.get(resultSet.getInt("genre_id")));
+            }
+        }, args);
+    }
+
+    /**
+     * Строка текущего состояния фильма при обновлении: рейтинг и счетчик лайков повторяются в каждой строке,
+     * genreId - null у фильма без жанров.
+     */
+    private record FilmStateRow(Integer mpaRatingId, long likeCount, Integer genreId) {
+    }
+
+    /**
+     * Собирает фильм из подряд идущих строк join-а с жанрами и отдает его, как только начинается следующий фильм.
+     */
+    private class FilmWithGenresCollector implements RowCallbackHandler {
+        private final Consumer<Film> action;
+        private Film current;
+
+        FilmWithGenresCollector(Consumer<Film> action) {
+            this.action = action;
+        }
+
+        @Override
+        public void processRow(ResultSet resultSet) throws SQLException {
+            long filmId = resultSet.getLong("id");
+            if (current == null || current.getId() != filmId) {
+                finish();
+                current = mapper.mapRow(resultSet, resultSet.getRow());
+                current.setGenres(new ArrayList<>());
+            }
+            int genreId = resultSet.getInt("genre_id");
+            if (!resultSet.wasNull()) {
+                current.getGenres().add(genreStorage.get(genreId));
+            }
+        }
+
+        void finish() {
+            if (current != null) {
+                action.accept(current);
+                current = null;
+            }
+        }
+    }
 }
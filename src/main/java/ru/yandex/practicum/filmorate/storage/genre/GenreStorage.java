@@ -11,4 +11,14 @@ public interface GenreStorage {
     Genre get(int id);
 
     void ensureGenreExists(int id);
+
+    /**
+     * Перечитывает справочник жанров из базы.
+     */
+    void refresh();
+
+    /**
+     * Номер версии справочника, растет, когда перечитывание находит изменения.
+     */
+    long getVersion();
 }
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage.genre;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
@@ -7,33 +8,66 @@ import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.mappers.genre.GenreRowMapper;
 import ru.yandex.practicum.filmorate.model.Genre;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Справочник жанров. Меняется крайне редко, поэтому целиком читается при старте в массив,
+ * индексированный id, и дальше отдается из памяти; {@link #refresh()} перечитывает его при старте и затем периодически.
+ */
 @Repository
 @RequiredArgsConstructor
 public class RealDbGenreStorage implements GenreStorage {
     private final JdbcTemplate jdbc;
     private final GenreRowMapper mapper;
+    private volatile Genre[] genresById = new Genre[0];
+    private final AtomicLong version = new AtomicLong();
 
-    private static final String SELECT_ALL_GENRES = "SELECT * FROM public.\"GENRE\"";
-    private static final String SELECT_GENRE = "SELECT * FROM public.\"GENRE\" where Id = ?";
+    private static final String SELECT_ALL_GENRES = "SELECT * FROM public.\"GENRE\" ORDER BY Id";
+
+    @PostConstruct
+    @Override
+    public void refresh() {
+        List<Genre> genres = jdbc.query(SELECT_ALL_GENRES, mapper);
+        Genre[] byId = new Genre[genres.stream().mapToInt(Genre::getId).max().orElse(-1) + 1];
+        genres.forEach(genre -> byId[genre.getId()] = genre);
+        // версия - это ETag справочника, поэтому она меняется, только если изменилось содержимое
+        if (!Arrays.equals(byId, genresById)) {
+            genresById = byId;
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
 
     @Override
     public List<Genre> getAll() {
-        return jdbc.query(SELECT_ALL_GENRES, mapper);
+        return Arrays.stream(genresById).filter(Objects::nonNull).map(RealDbGenreStorage::copy).toList();
     }
 
     @Override
     public Genre get(int id) {
-        List<Genre> list = jdbc.query(SELECT_GENRE, mapper, id);
-        if (list.isEmpty()) {
+        Genre[] genres = genresById;
+        if (id < 0 || id >= genres.length || genres[id] == null) {
             throw new NotFoundException(String.format("Не найден жанр с id=%d", id));
         }
-        return list.getFirst();
+        return copy(genres[id]);
     }
 
     @Override
     public void ensureGenreExists(int id) {
         get(id);
     }
+
+    private static Genre copy(Genre genre) {
+        Genre copy = new Genre();
+        copy.setId(genre.getId());
+        copy.setName(genre.getName());
+        return copy;
+    }
 }
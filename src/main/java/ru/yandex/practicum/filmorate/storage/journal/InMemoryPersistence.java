@@ -0,0 +1,206 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Восстановление и снимки хранилищ в памяти.
+ * Снимок snapshot-<LSN>.bin - заголовок (сигнатура, версия, LSN, последние выданные id фильмов
+ * и пользователей), записи {@link JournalCodec} с длиной
+ * (фильм и все его лайки одним массивом, пользователь и все его друзья), метка конца и CRC32 всего файла.
+ * Снимок снимается на ходу, без остановки изменений: сначала журнал переключается на новый сегмент
+ * и запоминается LSN, затем обходятся хранилища. В снимок могут попасть и более поздние изменения,
+ * но записи журнала идемпотентны, поэтому накат хвоста после LSN снимка все равно дает точное состояние.
+ * Изменения видны в памяти раньше, чем их запись ляжет на диск, поэтому перед заменой снимка
+ * дожидаемся сброса журнала ({@link StorageJournal#sync}): если журнал остановлен после ошибки записи,
+ * снимок выбрасывается - иначе в нем сохранилось бы изменение, которое клиенту вернулось ошибкой.
+ * При старте последний целый снимок отображается в память и загружается, затем накатывается хвост журнала.
+ */
+@Component
+public class InMemoryPersistence {
+    private static final Logger log = LoggerFactory.getLogger(InMemoryPersistence.class);
+    private static final int MAGIC = 0x46534E50;
+    private static final int FORMAT_VERSION = 2;
+    // первая версия, без последних выданных id в заголовке; такие снимки по-прежнему читаются
+    private static final int FORMAT_VERSION_WITHOUT_SEQUENCES = 1;
+    private static final int END_OF_RECORDS = -1;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private final StorageJournal journal;
+    private final InMemoryFilmStorage filmStorage;
+    private final InMemoryUserStorage userStorage;
+
+    public InMemoryPersistence(StorageJournal journal, InMemoryFilmStorage filmStorage,
+                               InMemoryUserStorage userStorage) {
+        this.journal = journal;
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+    }
+
+    @PostConstruct
+    public void recover() throws IOException {
+        if (!journal.isEnabled()) {
+            return;
+        }
+        long started = System.nanoTime();
+        long snapshotLsn = loadLatestSnapshot();
+        long lastLsn = journal.replay(snapshotLsn, this::apply);
+        journal.start(lastLsn);
+        log.info("Хранилища в памяти восстановлены за {} мс: снимок до LSN {}, журнал до LSN {}",
+                (System.nanoTime() - started) / 1_000_000, snapshotLsn, lastLsn);
+    }
+
+    @Scheduled(initialDelayString = "${filmorate.storage.journal.snapshot-delay-ms:600000}",
+            fixedDelayString = "${filmorate.storage.journal.snapshot-delay-ms:600000}")
+    public void snapshot() throws IOException {
+        if (!journal.isEnabled() || journal.isFailed()) {
+            return;
+        }
+        long started = System.nanoTime();
+        long lsn = journal.rotate().join();
+        Path directory = journal.getDirectory();
+        Path target = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, lsn, SNAPSHOT_SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(lsn);
+            // счетчики читаются до обхода: фильм, созданный во время обхода, все равно попадет в журнал
+            out.writeLong(filmStorage.getIdSequence());
+            out.writeLong(userStorage.getIdSequence());
+            Consumer<JournalRecord> writer = record -> {
+                byte[] body = JournalCodec.encode(record);
+                try {
+                    out.writeInt(body.length);
+                    out.write(body);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            filmStorage.writeSnapshot(writer);
+            userStorage.writeSnapshot(writer);
+            out.writeInt(END_OF_RECORDS);
+            out.flush();
+            new DataOutputStream(file).writeInt((int) checked.getChecksum().getValue());
+            file.getChannel().force(true);
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(temporary);
+            throw e.getCause();
+        }
+        try {
+            journal.sync().join();
+        } catch (CompletionException | IllegalStateException e) {
+            Files.deleteIfExists(temporary);
+            log.error("Снимок до LSN {} не сохранен: журнал остановлен после ошибки записи", lsn);
+            return;
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (Path old : listSnapshots()) {
+            if (snapshotLsn(old) < lsn) {
+                Files.deleteIfExists(old);
+            }
+        }
+        journal.deleteSegmentsUpTo(lsn);
+        log.info("Снимок хранилищ в памяти до LSN {} записан за {} мс", lsn, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Загружает самый свежий целый снимок и возвращает его LSN (0, если снимков нет).
+     */
+    private long loadLatestSnapshot() throws IOException {
+        List<Path> snapshots = listSnapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path path = snapshots.get(i);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (!isValid(buffer)) {
+                    log.warn("Снимок {} поврежден и пропущен", path.getFileName());
+                    continue;
+                }
+                buffer.position(2 * Integer.BYTES);
+                long lsn = buffer.getLong();
+                if (buffer.getInt(Integer.BYTES) == FORMAT_VERSION) {
+                    filmStorage.restoreIdSequence(buffer.getLong());
+                    userStorage.restoreIdSequence(buffer.getLong());
+                }
+                int length;
+                while ((length = buffer.getInt()) != END_OF_RECORDS) {
+                    int next = buffer.position() + length;
+                    apply(JournalCodec.read(buffer.slice(buffer.position(), length)));
+                    buffer.position(next);
+                }
+                return lsn;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isValid(MappedByteBuffer buffer) {
+        int size = buffer.limit();
+        if (size < 4 * Integer.BYTES + Long.BYTES || buffer.getInt(0) != MAGIC) {
+            return false;
+        }
+        int version = buffer.getInt(Integer.BYTES);
+        if (version == FORMAT_VERSION ? size < 4 * Integer.BYTES + 3 * Long.BYTES
+                : version != FORMAT_VERSION_WITHOUT_SEQUENCES) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, size - Integer.BYTES));
+        return (int) crc.getValue() == buffer.getInt(size - Integer.BYTES);
+    }
+
+    private void apply(JournalRecord record) {
+        filmStorage.replay(record);
+        userStorage.replay(record);
+    }
+
+    private List<Path> listSnapshots() throws IOException {
+        Path directory = journal.getDirectory();
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(InMemoryPersistence::snapshotLsn))
+                    .toList();
+        }
+    }
+
+    private static long snapshotLsn(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,211 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Двоичный формат записей журнала: байт типа и поля записи фиксированной ширины в big-endian,
+ * строки - длина и байты UTF-8 (длина -1 - null), даты - номер дня от эпохи.
+ */
+final class JournalCodec {
+    private static final byte FILM_PUT = 1;
+    private static final byte FILM_DELETE = 2;
+    private static final byte LIKE_ADD = 3;
+    private static final byte LIKE_REMOVE = 4;
+    private static final byte LIKES_SNAPSHOT = 5;
+    private static final byte USER_PUT = 6;
+    private static final byte USER_DELETE = 7;
+    private static final byte FRIEND_ADD = 8;
+    private static final byte FRIEND_REMOVE = 9;
+    private static final byte FRIENDS_SNAPSHOT = 10;
+
+    private JournalCodec() {
+    }
+
+    static byte[] encode(JournalRecord record) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            write(record, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static void write(JournalRecord record, DataOutputStream out) throws IOException {
+        switch (record) {
+            case JournalRecord.FilmPut(Film film) -> {
+                out.writeByte(FILM_PUT);
+                writeFilm(film, out);
+            }
+            case JournalRecord.FilmDelete(long filmId) -> {
+                out.writeByte(FILM_DELETE);
+                out.writeLong(filmId);
+            }
+            case JournalRecord.LikeAdd(long filmId, long userId) -> writePair(LIKE_ADD, filmId, userId, out);
+            case JournalRecord.LikeRemove(long filmId, long userId) -> writePair(LIKE_REMOVE, filmId, userId, out);
+            case JournalRecord.LikesSnapshot(long filmId, long[] userIds) -> writeIds(LIKES_SNAPSHOT, filmId, userIds, out);
+            case JournalRecord.UserPut(User user) -> {
+                out.writeByte(USER_PUT);
+                writeUser(user, out);
+            }
+            case JournalRecord.UserDelete(long userId) -> {
+                out.writeByte(USER_DELETE);
+                out.writeLong(userId);
+            }
+            case JournalRecord.FriendAdd(long userId, long friendId) -> writePair(FRIEND_ADD, userId, friendId, out);
+            case JournalRecord.FriendRemove(long userId, long friendId) -> writePair(FRIEND_REMOVE, userId, friendId, out);
+            case JournalRecord.FriendsSnapshot(long userId, long[] friendIds) ->
+                    writeIds(FRIENDS_SNAPSHOT, userId, friendIds, out);
+        }
+    }
+
+    static JournalRecord read(ByteBuffer in) {
+        byte type = in.get();
+        return switch (type) {
+            case FILM_PUT -> new JournalRecord.FilmPut(readFilm(in));
+            case FILM_DELETE -> new JournalRecord.FilmDelete(in.getLong());
+            case LIKE_ADD -> new JournalRecord.LikeAdd(in.getLong(), in.getLong());
+            case LIKE_REMOVE -> new JournalRecord.LikeRemove(in.getLong(), in.getLong());
+            case LIKES_SNAPSHOT -> new JournalRecord.LikesSnapshot(in.getLong(), readIds(in));
+            case USER_PUT -> new JournalRecord.UserPut(readUser(in));
+            case USER_DELETE -> new JournalRecord.UserDelete(in.getLong());
+            case FRIEND_ADD -> new JournalRecord.FriendAdd(in.getLong(), in.getLong());
+            case FRIEND_REMOVE -> new JournalRecord.FriendRemove(in.getLong(), in.getLong());
+            case FRIENDS_SNAPSHOT -> new JournalRecord.FriendsSnapshot(in.getLong(), readIds(in));
+            default -> throw new IllegalStateException("Неизвестный тип записи журнала: " + type);
+        };
+    }
+
+    private static void writeFilm(Film film, DataOutputStream out) throws IOException {
+        out.writeLong(film.getId());
+        writeString(film.getName(), out);
+        writeString(film.getDescription(), out);
+        writeDate(film.getReleaseDate(), out);
+        out.writeInt(film.getDuration());
+        out.writeLong(film.getVersion());
+        MpaRating mpaRating = film.getMpaRating();
+        out.writeBoolean(mpaRating != null);
+        if (mpaRating != null) {
+            out.writeInt(mpaRating.getId());
+            writeString(mpaRating.getName(), out);
+        }
+        List<Genre> genres = film.getGenres() == null ? List.of() : film.getGenres();
+        out.writeInt(genres.size());
+        for (Genre genre : genres) {
+            out.writeInt(genre.getId());
+            writeString(genre.getName(), out);
+        }
+    }
+
+    private static Film readFilm(ByteBuffer in) {
+        Film film = new Film();
+        film.setId(in.getLong());
+        film.setName(readString(in));
+        film.setDescription(readString(in));
+        film.setReleaseDate(readDate(in));
+        film.setDuration(in.getInt());
+        film.setVersion(in.getLong());
+        if (in.get() != 0) {
+            MpaRating mpaRating = new MpaRating();
+            mpaRating.setId(in.getInt());
+            mpaRating.setName(readString(in));
+            film.setMpaRating(mpaRating);
+        }
+        int genresCount = in.getInt();
+        List<Genre> genres = new ArrayList<>(genresCount);
+        for (int i = 0; i < genresCount; i++) {
+            Genre genre = new Genre();
+            genre.setId(in.getInt());
+            genre.setName(readString(in));
+            genres.add(genre);
+        }
+        film.setGenres(genres);
+        return film;
+    }
+
+    private static void writeUser(User user, DataOutputStream out) throws IOException {
+        out.writeLong(user.getId());
+        writeString(user.getEmail(), out);
+        writeString(user.getLogin(), out);
+        writeString(user.getName(), out);
+        writeDate(user.getBirthday(), out);
+        out.writeLong(user.getVersion());
+    }
+
+    private static User readUser(ByteBuffer in) {
+        User user = new User();
+        user.setId(in.getLong());
+        user.setEmail(readString(in));
+        user.setLogin(readString(in));
+        user.setName(readString(in));
+        user.setBirthday(readDate(in));
+        user.setVersion(in.getLong());
+        return user;
+    }
+
+    private static void writePair(byte type, long first, long second, DataOutputStream out) throws IOException {
+        out.writeByte(type);
+        out.writeLong(first);
+        out.writeLong(second);
+    }
+
+    private static void writeIds(byte type, long id, long[] ids, DataOutputStream out) throws IOException {
+        out.writeByte(type);
+        out.writeLong(id);
+        out.writeInt(ids.length);
+        for (long value : ids) {
+            out.writeLong(value);
+        }
+    }
+
+    private static long[] readIds(ByteBuffer in) {
+        long[] ids = new long[in.getInt()];
+        in.asLongBuffer().get(ids);
+        in.position(in.position() + ids.length * Long.BYTES);
+        return ids;
+    }
+
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDate(LocalDate date, DataOutputStream out) throws IOException {
+        out.writeBoolean(date != null);
+        if (date != null) {
+            out.writeLong(date.toEpochDay());
+        }
+    }
+
+    private static LocalDate readDate(ByteBuffer in) {
+        return in.get() == 0 ? null : LocalDate.ofEpochDay(in.getLong());
+    }
+}
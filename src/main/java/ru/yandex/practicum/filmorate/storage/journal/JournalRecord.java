@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+/**
+ * Запись журнала изменений хранилищ в памяти. Каждая запись идемпотентна (устанавливает состояние,
+ * а не приращение), поэтому хвост журнала можно накатывать поверх снимка, снятого на ходу.
+ * Записи LikesSnapshot и FriendsSnapshot используются только в снимках.
+ */
+public sealed interface JournalRecord {
+
+    record FilmPut(Film film) implements JournalRecord {
+    }
+
+    record FilmDelete(long filmId) implements JournalRecord {
+    }
+
+    record LikeAdd(long filmId, long userId) implements JournalRecord {
+    }
+
+    record LikeRemove(long filmId, long userId) implements JournalRecord {
+    }
+
+    record LikesSnapshot(long filmId, long[] userIds) implements JournalRecord {
+    }
+
+    record UserPut(User user) implements JournalRecord {
+    }
+
+    record UserDelete(long userId) implements JournalRecord {
+    }
+
+    record FriendAdd(long userId, long friendId) implements JournalRecord {
+    }
+
+    record FriendRemove(long userId, long friendId) implements JournalRecord {
+    }
+
+    record FriendsSnapshot(long userId, long[] friendIds) implements JournalRecord {
+    }
+}
@@ -0,0 +1,380 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений хранилищ в памяти.
+ * Каждая запись получает номер LSN и кладется в очередь; единственный поток записи забирает из очереди
+ * все накопившееся, пишет пачку одним вызовом FileChannel.write и делает один force на всю пачку
+ * (group commit), после чего завершает ожидания всех записей пачки.
+ * Формат записи в сегменте: длина тела, CRC32 тела, тело (LSN и запись из {@link JournalCodec}).
+ * Журнал разбит на сегменты journal-<первый LSN>.log; при снятии снимка открывается новый сегмент,
+ * а сегменты, целиком покрытые снимком, удаляются.
+ * Хвост сегмента за последней целой записью (оборванная при сбое пачка) перед дописыванием отрезается:
+ * при запуске - у сегмента, в который пойдут новые записи, при ошибке записи - до начала пачки.
+ * Журнал не упреждающий: хранилище меняет данные в памяти и ставит запись в очередь под одним монитором,
+ * другие запросы видят изменение сразу, а ответ изменившему возвращается после сброса записи на диск.
+ * Поэтому после первой же ошибки записи журнал останавливается насовсем: отклоняет все записи в очереди
+ * и новые, а снимки больше не снимаются (см. {@link #sync}). На диске остается только подтвержденное,
+ * а изменения, которые успели стать видны в памяти, пропадут при перезапуске.
+ */
+@Component
+public class StorageJournal {
+    public static final StorageJournal DISABLED = new StorageJournal(false, null, false, 1);
+
+    private static final Logger log = LoggerFactory.getLogger(StorageJournal.class);
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final boolean fsync;
+    private final int maxBatch;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    // последний выданный LSN; выдача номера и постановка в очередь идут под монитором журнала,
+    // поэтому порядок в очереди совпадает с порядком LSN
+    private long lastLsn;
+    private volatile boolean running;
+    // после ошибки записи журнал больше ничего не принимает; выставляется под монитором журнала
+    private volatile boolean failed;
+    private FileChannel segment;
+    private Thread writer;
+
+    @Autowired
+    public StorageJournal(@Value("${filmorate.storage.journal.enabled:false}") boolean enabled,
+                          @Value("${filmorate.storage.journal.dir:./db/journal}") Path directory,
+                          @Value("${filmorate.storage.journal.fsync:true}") boolean fsync,
+                          @Value("${filmorate.storage.journal.max-batch:4096}") int maxBatch) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.fsync = fsync;
+        this.maxBatch = maxBatch;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Запускает поток записи после восстановления: новые записи нумеруются с recoveredLsn + 1
+     * и пишутся в сегмент journal-<recoveredLsn + 1>.log. Такой сегмент уже может существовать, если сбой
+     * случился на первой пачке после ротации: целых записей в нем нет, иначе recoveredLsn был бы больше,
+     * а оборванный хвост отрезается.
+     */
+    public synchronized void start(long recoveredLsn) throws IOException {
+        if (!enabled || running) {
+            return;
+        }
+        lastLsn = recoveredLsn;
+        segment = openSegment(recoveredLsn + 1);
+        running = true;
+        writer = new Thread(this::writeLoop, "storage-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Ставит запись в очередь и возвращает ожидание ее сброса на диск. Вызывается под монитором
+     * изменяемого объекта, чтобы порядок записей по одному ключу совпадал с порядком изменений;
+     * само ожидание ({@link #await}) - уже после выхода из-под монитора.
+     */
+    public CompletableFuture<Void> append(JournalRecord record) {
+        if (!enabled) {
+            return DONE;
+        }
+        byte[] body = JournalCodec.encode(record);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (this) {
+            checkAccepting();
+            queue.add(new Pending(++lastLsn, body, false, done));
+        }
+        return done;
+    }
+
+    public static void await(CompletableFuture<?> durable) {
+        try {
+            durable.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw new UncheckedIOException("Не удалось записать изменение в журнал", ioException);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Закрывает текущий сегмент и открывает следующий. Возвращает LSN, до которого включительно
+     * все записи лежат в закрытых сегментах: снимок, начатый после этого, покрывает их все.
+     */
+    public CompletableFuture<Long> rotate() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        long lsn;
+        synchronized (this) {
+            checkAccepting();
+            lsn = lastLsn;
+            queue.add(new Pending(lsn, null, true, done));
+        }
+        return done.thenApply(ignored -> lsn);
+    }
+
+    /**
+     * Возвращает ожидание того, что все поставленные до вызова записи сброшены на диск. Завершается
+     * с ошибкой, если журнал остановлен: тогда какое-то из изменений, уже видимых в памяти, на диск
+     * не попало, и снимок с ним сохранять нельзя.
+     */
+    public CompletableFuture<Void> sync() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (this) {
+            checkAccepting();
+            queue.add(new Pending(lastLsn, null, false, done));
+        }
+        return done;
+    }
+
+    /**
+     * Накатывает записи с LSN больше afterLsn из всех сегментов по порядку, каждый - до первой
+     * неполной или битой записи. Возвращает наибольший встреченный LSN.
+     */
+    public long replay(long afterLsn, Consumer<JournalRecord> action) throws IOException {
+        long maxLsn = afterLsn;
+        for (Path path : listSegments()) {
+            maxLsn = Math.max(maxLsn, readSegment(path, afterLsn, action).maxLsn());
+        }
+        return maxLsn;
+    }
+
+    /**
+     * Удаляет сегменты, все записи которых не новее lsn.
+     */
+    public void deleteSegmentsUpTo(long lsn) throws IOException {
+        List<Path> segments = listSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            long nextFirstLsn = i + 1 < segments.size() ? firstLsn(segments.get(i + 1)) : Long.MAX_VALUE;
+            if (nextFirstLsn <= lsn + 1) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+        writer.join();
+        segment.close();
+    }
+
+    private void checkAccepting() {
+        if (!running) {
+            throw new IllegalStateException("Журнал хранилища не запущен");
+        }
+        if (failed) {
+            throw new IllegalStateException("Журнал хранилища остановлен после ошибки записи");
+        }
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        CRC32 crc = new CRC32();
+        List<Pending> written = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                for (Pending pending : batch) {
+                    if (pending.body() == null) {
+                        // ротация или барьер: сначала сбрасываем все, что стояло в очереди раньше
+                        flush(bytes, written);
+                        if (pending.rotate()) {
+                            segment.close();
+                            segment = openSegment(pending.lsn() + 1);
+                        }
+                        pending.done().complete(null);
+                        continue;
+                    }
+                    crc.reset();
+                    out.writeInt(Long.BYTES + pending.body().length);
+                    crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, pending.lsn()));
+                    crc.update(pending.body());
+                    out.writeInt((int) crc.getValue());
+                    out.writeLong(pending.lsn());
+                    out.write(pending.body());
+                    written.add(pending);
+                }
+                flush(bytes, written);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                log.error("Ошибка записи журнала хранилища: {}", e.getMessage());
+                batch.forEach(pending -> pending.done().completeExceptionally(e));
+                written.clear();
+                bytes.reset();
+                // изменения неудавшейся пачки уже видны в памяти, и более поздние записи могут от них
+                // зависеть: останавливаемся и отклоняем все, что стоит в очереди; новые записи append
+                // уже не примет - он проверяет failed под тем же монитором
+                synchronized (this) {
+                    failed = true;
+                    queue.forEach(pending -> pending.done().completeExceptionally(e));
+                    queue.clear();
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(ByteArrayOutputStream bytes, List<Pending> written) throws IOException {
+        if (written.isEmpty()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        long batchStart = segment.size();
+        try {
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            if (fsync) {
+                segment.force(false);
+            }
+        } catch (IOException e) {
+            // частично записанная пачка не должна оказаться перед следующими: за ней replay остановится
+            try {
+                segment.truncate(batchStart);
+            } catch (IOException truncateException) {
+                log.error("Не удалось отрезать оборванную пачку журнала: {}", truncateException.getMessage());
+            }
+            throw e;
+        }
+        written.forEach(pending -> pending.done().complete(null));
+        written.clear();
+        bytes.reset();
+    }
+
+    private FileChannel openSegment(long firstLsn) throws IOException {
+        Files.createDirectories(directory);
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+        long validBytes = Files.exists(path) ? readSegment(path, Long.MAX_VALUE, record -> {
+        }).validBytes() : 0;
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (channel.size() > validBytes) {
+            log.warn("Отрезан оборванный хвост сегмента {}: {} байт", path.getFileName(), channel.size() - validBytes);
+            channel.truncate(validBytes);
+        }
+        return channel;
+    }
+
+    /**
+     * Читает сегмент через отображение в память до первой неполной или битой записи - это оборванная
+     * запись, подтверждения которой никто не получил. Записи с LSN больше afterLsn передаются в action.
+     */
+    private static SegmentScan readSegment(Path path, long afterLsn, Consumer<JournalRecord> action) throws IOException {
+        long maxLsn = 0;
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < Long.BYTES + 1 || length > buffer.remaining()) {
+                    log.warn("Сегмент {} оборван на позиции {}", path.getFileName(), buffer.position() - HEADER_BYTES);
+                    return new SegmentScan(buffer.position() - HEADER_BYTES, maxLsn);
+                }
+                ByteBuffer body = buffer.slice(buffer.position(), length);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("Битая запись в сегменте {} на позиции {}", path.getFileName(),
+                            buffer.position() - HEADER_BYTES);
+                    return new SegmentScan(buffer.position() - HEADER_BYTES, maxLsn);
+                }
+                buffer.position(buffer.position() + length);
+                long lsn = body.getLong();
+                if (lsn > afterLsn) {
+                    action.accept(JournalCodec.read(body));
+                }
+                maxLsn = Math.max(maxLsn, lsn);
+            }
+            return new SegmentScan(buffer.position(), maxLsn);
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(StorageJournal::firstLsn))
+                    .toList();
+        }
+    }
+
+    private static long firstLsn(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Итог чтения сегмента: сколько байт от начала занимают целые записи и наибольший LSN среди них.
+     */
+    private record SegmentScan(long validBytes, long maxLsn) {
+    }
+
+    /**
+     * Запись в очереди; body == null - метка: ротация сегмента (rotate) или барьер {@link #sync}.
+     */
+    private record Pending(long lsn, byte[] body, boolean rotate, CompletableFuture<Void> done) {
+    }
+}
@@ -11,4 +11,14 @@ public interface MpaStorage {
     MpaRating get(int id);
 
     void ensureMpaRatingExists(int id);
+
+    /**
+     * Перечитывает справочник mpa-рейтингов из базы.
+     */
+    void refresh();
+
+    /**
+     * Номер версии справочника, растет, когда перечитывание находит изменения.
+     */
+    long getVersion();
 }
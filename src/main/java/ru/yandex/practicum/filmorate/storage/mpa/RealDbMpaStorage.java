@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage.mpa;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
@@ -7,33 +8,65 @@ import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.mappers.mpa.MpaRowMapper;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Справочник mpa-рейтингов. Как и жанры, читается при старте в массив, индексированный id,
+ * и отдается из памяти; {@link #refresh()} перечитывает его при старте и затем периодически.
+ */
 @Repository
 @RequiredArgsConstructor
 public class RealDbMpaStorage implements MpaStorage {
     private final JdbcTemplate jdbc;
     private final MpaRowMapper mapper;
+    private volatile MpaRating[] ratingsById = new MpaRating[0];
+    private final AtomicLong version = new AtomicLong();
 
-    private static final String SELECT_ALL_RATINGS = "SELECT * FROM public.\"MPA_RATING\"";
-    private static final String SELECT_RATING = "SELECT * FROM public.\"MPA_RATING\" where Id = ?";
+    private static final String SELECT_ALL_RATINGS = "SELECT * FROM public.\"MPA_RATING\" ORDER BY Id";
+
+    @PostConstruct
+    @Override
+    public void refresh() {
+        List<MpaRating> ratings = jdbc.query(SELECT_ALL_RATINGS, mapper);
+        MpaRating[] byId = new MpaRating[ratings.stream().mapToInt(MpaRating::getId).max().orElse(-1) + 1];
+        ratings.forEach(rating -> byId[rating.getId()] = rating);
+        if (!Arrays.equals(byId, ratingsById)) {
+            ratingsById = byId;
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
 
     @Override
     public List<MpaRating> getAll() {
-        return jdbc.query(SELECT_ALL_RATINGS, mapper);
+        return Arrays.stream(ratingsById).filter(Objects::nonNull).map(RealDbMpaStorage::copy).toList();
     }
 
     @Override
     public MpaRating get(int id) {
-        List<MpaRating> list = jdbc.query(SELECT_RATING, mapper, id);
-        if (list.isEmpty()) {
+        MpaRating[] ratings = ratingsById;
+        if (id < 0 || id >= ratings.length || ratings[id] == null) {
             throw new NotFoundException(String.format("Не найден mpa-рейтинг с id=%d", id));
         }
-        return list.getFirst();
+        return copy(ratings[id]);
     }
 
     @Override
     public void ensureMpaRatingExists(int id) {
         get(id);
     }
+
+    private static MpaRating copy(MpaRating rating) {
+        MpaRating copy = new MpaRating();
+        copy.setId(rating.getId());
+        copy.setName(rating.getName());
+        return copy;
+    }
 }
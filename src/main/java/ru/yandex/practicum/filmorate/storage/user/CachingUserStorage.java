@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.LongPairConsumer;
+import ru.yandex.practicum.filmorate.storage.cache.LruCache;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Кэширующая обертка над хранилищем пользователей, устроена так же, как {@link
+ * ru.yandex.practicum.filmorate.storage.film.CachingFilmStorage}: из кэша отдается getUser,
+ * изменения пишутся в хранилище и выкидывают затронутых пользователей из кэша.
+ */
+public class CachingUserStorage implements UserStorage {
+    private final UserStorage delegate;
+    private final LruCache<Long, User> cache;
+
+    public CachingUserStorage(UserStorage delegate, LruCache<Long, User> cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    /**
+     * Примерный вес пользователя в байтах: объект, строки и список друзей.
+     */
+    public static long weigh(User user) {
+        long weight = 128;
+        weight += user.getEmail() == null ? 0 : 2L * user.getEmail().length();
+        weight += user.getLogin() == null ? 0 : 2L * user.getLogin().length();
+        weight += user.getName() == null ? 0 : 2L * user.getName().length();
+        weight += 16L * user.getFriends().size();
+        return weight;
+    }
+
+    @Override
+    public User create(User user) {
+        return delegate.create(user);
+    }
+
+    @Override
+    public User update(User user) {
+        try {
+            return delegate.update(user);
+        } finally {
+            cache.invalidate(user.getId());
+        }
+    }
+
+    @Override
+    public void delete(long id) {
+        try {
+            delegate.delete(id);
+        } finally {
+            // удаленный пользователь пропадает и из списков друзей остальных
+            cache.invalidate(id);
+            cache.invalidateIf(user -> user.getFriends().contains(id));
+        }
+    }
+
+    @Override
+    public User getUser(long id) {
+        return cache.getOrLoad(id, delegate::getUser).copy();
+    }
+
+    @Override
+    public void ensureUserExists(long id) throws NotFoundException {
+        if (!cache.contains(id)) {
+            delegate.ensureUserExists(id);
+        }
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return delegate.findExistingIds(ids);
+    }
+
+    @Override
+    public List<User> getUsers() {
+        return delegate.getUsers();
+    }
+
+    @Override
+    public List<User> getUsers(Collection<Long> ids) {
+        return delegate.getUsers(ids);
+    }
+
+    @Override
+    public List<User> getUsersPage(long afterId, int limit) {
+        return delegate.getUsersPage(afterId, limit);
+    }
+
+    @Override
+    public void addFriend(long userId, long friendId) {
+        try {
+            delegate.addFriend(userId, friendId);
+        } finally {
+            cache.invalidate(userId);
+            cache.invalidate(friendId);
+        }
+    }
+
+    @Override
+    public void removeFriend(long userId, long friendId) {
+        try {
+            delegate.removeFriend(userId, friendId);
+        } finally {
+            cache.invalidate(userId);
+            cache.invalidate(friendId);
+        }
+    }
+
+    @Override
+    public void forEachFriendship(LongPairConsumer action) {
+        delegate.forEachFriendship(action);
+    }
+}
@@ -2,85 +2,299 @@ package ru.yandex.practicum.filmorate.storage.user;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
-import org.springframework.web.bind.annotation.RequestBody;
-import ru.yandex.practicum.filmorate.controller.UserController;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.OptimisticLockException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.StorageJournal;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+import ru.yandex.practicum.filmorate.util.LongPairConsumer;
+import ru.yandex.practicum.filmorate.util.StripedLocks;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+/**
+ * Потокобезопасное хранилище пользователей в памяти, устроено так же, как
+ * {@link ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage}: ConcurrentSkipListMap по id,
+ * атомарный счетчик id, изменения и чтение пользователя - под монитором из {@link StripedLocks},
+ * наружу - только копии, в том числе множества друзей. Изменения пишутся в {@link StorageJournal}
+ * с теми же оговорками: он не упреждающий и после ошибки записи останавливается.
+ */
 @Component
 @Qualifier("InMemoryUserStorage")
 public class InMemoryUserStorage implements UserStorage {
 
-    private static final Logger log = LoggerFactory.getLogger(UserController.class);
-    private final Map<Long, User> users = new HashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(InMemoryUserStorage.class);
+    private final ConcurrentSkipListMap<Long, User> users = new ConcurrentSkipListMap<>();
+    private final AtomicLong idSequence = new AtomicLong();
+    private final StripedLocks locks = new StripedLocks(64);
+    private final StorageJournal journal;
+
+    public InMemoryUserStorage() {
+        this(StorageJournal.DISABLED);
+    }
+
+    @Autowired
+    public InMemoryUserStorage(StorageJournal journal) {
+        this.journal = journal;
+    }
 
     @Override
-    public User create(@RequestBody User user) {
+    public User create(User user) {
         log.debug("Вызван метод create");
-        // формируем дополнительные данные
-        user.setId(getNextId());
+        user.setId(idSequence.incrementAndGet());
         if (user.getName() == null) {
             user.setName(user.getLogin());
         }
-        // сохраняем новую публикацию в памяти приложения
-        users.put((long) user.getId(), user);
-        return user;
+        user.setVersion(1);
+        User stored = user.copy();
+        stored.setFriends(new LongHashSet());
+        CompletableFuture<Void> durable;
+        synchronized (locks.forKey(stored.getId())) {
+            durable = journal.append(new JournalRecord.UserPut(stored));
+            users.put(stored.getId(), stored);
+        }
+        StorageJournal.await(durable);
+        return lockedCopy(stored);
     }
 
     @Override
-    public User update(@RequestBody User user) {
+    public User update(User user) {
         log.debug("Вызван метод update");
-        long id = user.getId();
-        User updated = users.get(id);
-        updated.setName(user.getName());
-        updated.setLogin(user.getLogin());
-        updated.setEmail(user.getEmail());
-        updated.setBirthday(user.getBirthday());
-        updated.setFriends(user.getFriends());
-
-        return user;
+        User updated = getStored(user.getId());
+        User result;
+        CompletableFuture<Void> durable;
+        synchronized (locks.forKey(user.getId())) {
+            ensureStillStored(updated);
+            if (updated.getVersion() != user.getVersion()) {
+                throw new OptimisticLockException(String.format("Пользователь с id=%d изменен другим запросом", user.getId()));
+            }
+            updated.setVersion(updated.getVersion() + 1);
+            updated.setName(user.getName());
+            updated.setLogin(user.getLogin());
+            updated.setEmail(user.getEmail());
+            updated.setBirthday(user.getBirthday());
+            result = updated.copy();
+            durable = journal.append(new JournalRecord.UserPut(updated));
+        }
+        StorageJournal.await(durable);
+        return result;
     }
 
     @Override
     public void delete(long id) {
         log.debug("Вызван метод delete");
-        users.remove(id);
+        CompletableFuture<Void> durable;
+        synchronized (locks.forKey(id)) {
+            durable = journal.append(new JournalRecord.UserDelete(id));
+            users.remove(id);
+        }
+        removeFromFriends(id);
+        StorageJournal.await(durable);
     }
 
+    @Override
     public User getUser(long id) {
-        User returnedUser = new User();
-        ensureUserExists(id);
-        User foundUser = users.get(id);
-        returnedUser.setId(foundUser.getId());
-        returnedUser.setLogin(foundUser.getLogin());
-        returnedUser.setEmail(foundUser.getEmail());
-        returnedUser.setBirthday(foundUser.getBirthday());
-        returnedUser.setFriends(foundUser.getFriends());
-        return returnedUser;
+        return lockedCopy(getStored(id));
     }
 
     @Override
     public void ensureUserExists(long id) throws NotFoundException {
-        if (!users.keySet().contains(id)) {
+        if (!users.containsKey(id)) {
             throw new NotFoundException("Пользователь не найден");
         }
     }
 
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return ids.stream().filter(users::containsKey).collect(Collectors.toSet());
+    }
+
+    @Override
     public List<User> getUsers() {
-        return users.keySet().stream().map(id -> getUser(id)).toList();
+        return users.values().stream().map(this::lockedCopy).toList();
+    }
+
+    @Override
+    public List<User> getUsers(Collection<Long> ids) {
+        return ids.stream().distinct().sorted().map(users::get).filter(Objects::nonNull).map(this::lockedCopy).toList();
+    }
+
+    @Override
+    public List<User> getUsersPage(long afterId, int limit) {
+        return users.tailMap(afterId, false).values().stream().limit(limit).map(this::lockedCopy).toList();
+    }
+
+    @Override
+    public void addFriend(long userId, long friendId) {
+        User user = getStored(userId);
+        ensureUserExists(friendId);
+        CompletableFuture<Void> durable;
+        synchronized (locks.forKey(userId)) {
+            ensureStillStored(user);
+            // друг мог быть удален после проверки выше: тогда его уже некому вычистить из друзей
+            ensureUserExists(friendId);
+            user.addFriend(friendId);
+            durable = journal.append(new JournalRecord.FriendAdd(userId, friendId));
+        }
+        StorageJournal.await(durable);
+    }
+
+    @Override
+    public void removeFriend(long userId, long friendId) {
+        User user = getStored(userId);
+        ensureUserExists(friendId);
+        CompletableFuture<Void> durable;
+        synchronized (locks.forKey(userId)) {
+            ensureStillStored(user);
+            user.deleteFriend(friendId);
+            durable = journal.append(new JournalRecord.FriendRemove(userId, friendId));
+        }
+        StorageJournal.await(durable);
+    }
+
+    @Override
+    public void forEachFriendship(LongPairConsumer action) {
+        users.forEach((userId, user) -> {
+            long[] friends;
+            synchronized (locks.forKey(userId)) {
+                friends = user.getFriends().toArray();
+            }
+            Arrays.sort(friends);
+            for (long friendId : friends) {
+                action.accept(userId, friendId);
+            }
+        });
+    }
+
+    /**
+     * Применяет запись журнала или снимка при восстановлении, не записывая ее в журнал повторно.
+     * Записи о фильмах пропускаются.
+     */
+    public void replay(JournalRecord record) {
+        switch (record) {
+            case JournalRecord.UserPut(User user) -> {
+                idSequence.accumulateAndGet(user.getId(), Math::max);
+                User stored = users.get(user.getId());
+                if (stored == null) {
+                    User created = user.copy();
+                    created.setFriends(new LongHashSet());
+                    users.put(created.getId(), created);
+                    return;
+                }
+                synchronized (locks.forKey(user.getId())) {
+                    stored.setName(user.getName());
+                    stored.setLogin(user.getLogin());
+                    stored.setEmail(user.getEmail());
+                    stored.setBirthday(user.getBirthday());
+                    stored.setVersion(user.getVersion());
+                }
+            }
+            case JournalRecord.UserDelete(long userId) -> {
+                idSequence.accumulateAndGet(userId, Math::max);
+                users.remove(userId);
+                removeFromFriends(userId);
+            }
+            case JournalRecord.FriendAdd(long userId, long friendId) -> {
+                // запись о дружбе могла попасть в журнал после удаления друга
+                if (users.containsKey(friendId)) {
+                    replayFriends(userId, user -> user.addFriend(friendId));
+                }
+            }
+            case JournalRecord.FriendRemove(long userId, long friendId) ->
+                    replayFriends(userId, user -> user.deleteFriend(friendId));
+            case JournalRecord.FriendsSnapshot(long userId, long[] friendIds) -> replayFriends(userId, user -> {
+                for (long friendId : friendIds) {
+                    user.addFriend(friendId);
+                }
+            });
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Последний выданный id для заголовка снимка, см. {@link InMemoryFilmStorage#getIdSequence}.
+     */
+    public long getIdSequence() {
+        return idSequence.get();
+    }
+
+    public void restoreIdSequence(long lastId) {
+        idSequence.accumulateAndGet(lastId, Math::max);
+    }
+
+    /**
+     * Выдает содержимое хранилища записями для снимка: каждый пользователь и следом все его друзья.
+     */
+    public void writeSnapshot(Consumer<JournalRecord> out) {
+        users.forEach((userId, user) -> {
+            User copy;
+            long[] friends;
+            synchronized (locks.forKey(userId)) {
+                copy = user.copy();
+                friends = user.getFriends().toArray();
+            }
+            out.accept(new JournalRecord.UserPut(copy));
+            if (friends.length > 0) {
+                out.accept(new JournalRecord.FriendsSnapshot(userId, friends));
+            }
+        });
+    }
+
+    private void removeFromFriends(long id) {
+        // как и в базе, удаленный пользователь пропадает из друзей остальных
+        users.forEach((userId, user) -> {
+            synchronized (locks.forKey(userId)) {
+                user.deleteFriend(id);
+            }
+        });
+    }
+
+    private void replayFriends(long userId, Consumer<User> action) {
+        User user = users.get(userId);
+        if (user == null) {
+            return;
+        }
+        synchronized (locks.forKey(userId)) {
+            action.accept(user);
+        }
+    }
+
+    private User getStored(long id) {
+        User user = users.get(id);
+        if (user == null) {
+            throw new NotFoundException("Пользователь не найден");
+        }
+        return user;
     }
 
-    private long getNextId() {
-        long maxKey = users.keySet().stream()
-                .max(Long::compareTo)
-                .orElse(0L);
+    /**
+     * Проверяет под монитором пользователя, что найденный до захвата монитора объект не удален за это время.
+     * Иначе изменение ушло бы в объект вне хранилища, а его запись в журнале - после записи об удалении,
+     * и пользователь воскрес бы при восстановлении.
+     */
+    private void ensureStillStored(User user) {
+        if (users.get(user.getId()) != user) {
+            throw new NotFoundException("Пользователь не найден");
+        }
+    }
 
-        return maxKey + 1;
+    private User lockedCopy(User user) {
+        synchronized (locks.forKey(user.getId())) {
+            return user.copy();
+        }
     }
 }
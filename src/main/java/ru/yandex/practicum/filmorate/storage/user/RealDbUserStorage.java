@@ -2,20 +2,25 @@ package ru.yandex.practicum.filmorate.storage.user;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
-import org.springframework.util.CollectionUtils;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.OptimisticLockException;
 import ru.yandex.practicum.filmorate.mappers.user.UserRowMapper;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.LongPairConsumer;
 
 import java.sql.PreparedStatement;
 import java.sql.Statement;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 @Repository
 @RequiredArgsConstructor
@@ -25,16 +30,26 @@ public class RealDbUserStorage implements UserStorage {
     private final UserRowMapper mapper;
 
     private static final String INSERT_USER = "INSERT INTO public.\"USER\" (EMAIL, NAME, LOGIN, BIRTHDATE) VALUES(?, ?, ?, ?)";
-    private static final String UPDATE_USER = "UPDATE public.\"USER\" SET email = ?, name = ?, login = ?, birthdate = ? WHERE id = ?";
+    private static final String UPDATE_USER = "UPDATE public.\"USER\" SET email = ?, name = ?, login = ?, birthdate = ?, " +
+            "version = version + 1 WHERE id = ? AND version = ?";
+    // версия новой строки - DEFAULT колонки VERSION
+    private static final long INITIAL_VERSION = 1;
     private static final String DELETE_USER = "DELETE FROM public.\"USER\" WHERE id = ?";
     private static final String SELECT_USER = "SELECT * FROM public.\"USER\" WHERE id = ?";
     private static final String DELETE_FRIENDS = "DELETE PUBLIC.FRIENDSHIP WHERE USER_Id = ?";
     private static final String ADD_NEW_FRIEND = "MERGE INTO PUBLIC.FRIENDSHIP (User_Id, Friend_Id, Is_Approved) VALUES (?, ?, true)";
-    private static final String REQUEST_TO_BE_FRIEND = "MERGE INTO PUBLIC.FRIENDSHIP (Friend_Id, User_Id, Is_Approved) VALUES (?, ?, false)";
+    private static final String REQUEST_TO_BE_FRIEND = "INSERT INTO PUBLIC.FRIENDSHIP (User_Id, Friend_Id, Is_Approved) VALUES (?, ?, false)";
+    private static final String DELETE_FRIEND = "DELETE FROM PUBLIC.FRIENDSHIP WHERE User_Id = ? AND Friend_Id = ?";
+    private static final String DELETE_REQUEST_TO_BE_FRIEND = "DELETE FROM PUBLIC.FRIENDSHIP WHERE User_Id = ? AND Friend_Id = ? AND Is_Approved = false";
     private static final String DELETE_REQUESTS_TO_FRIENDS = "DELETE FROM PUBLIC.FRIENDSHIP WHERE Friend_id = ?";
     private static final String SELECT_FRIENDS = "SELECT Friend_Id FROM public.FRIENDSHIP where User_id = ? and Is_Approved = true";
     private static final String CHECK_IF_USER_EXISTS = "SELECT count(*) FROM public.\"USER\" WHERE id = ?";
+    private static final String SELECT_ALL_FRIENDSHIPS = "SELECT User_Id, Friend_Id FROM PUBLIC.FRIENDSHIP " +
+            "WHERE Is_Approved = true ORDER BY User_Id, Friend_Id";
+    private static final String SELECT_USERS_BY_IDS = "SELECT * FROM public.\"USER\" WHERE id = ANY(?) ORDER BY id";
+    private static final String SELECT_EXISTING_IDS = "SELECT id FROM public.\"USER\" WHERE id = ANY(?)";
     private static final String SELECT_ALL_USERS = "SELECT * FROM public.\"USER\"";
+    private static final String SELECT_USERS_PAGE = "SELECT * FROM public.\"USER\" WHERE id > ? ORDER BY id LIMIT ?";
 
     @Override
     public User create(User user) {
@@ -52,24 +67,28 @@ public class RealDbUserStorage implements UserStorage {
         // Получаем сгенерированный ID
         long generatedId = Objects.requireNonNull(keyHolder.getKey()).longValue();
         user.setId(generatedId);
+        user.setVersion(INITIAL_VERSION);
         return user;
     }
 
+    /**
+     * Обновляет пользователя, если его версия в базе все еще user.getVersion(), и увеличивает версию;
+     * иначе - {@link OptimisticLockException}.
+     */
     @Override
+    @Transactional
     public User update(User user) {
-        jdbc.update(UPDATE_USER, user.getEmail(), user.getName(), user.getLogin(), user.getBirthday(), user.getId());
-        jdbc.update(DELETE_FRIENDS, user.getId());
-
-        if (!CollectionUtils.isEmpty(user.getFriends())) {
-            user.getFriends().forEach(friend -> {
-                jdbc.update(ADD_NEW_FRIEND, user.getId(), friend);
-                jdbc.update(REQUEST_TO_BE_FRIEND, user.getId(), friend);
-            });
+        int updated = jdbc.update(UPDATE_USER, user.getEmail(), user.getName(), user.getLogin(), user.getBirthday(),
+                user.getId(), user.getVersion());
+        if (updated == 0) {
+            ensureUserExists(user.getId());
+            throw new OptimisticLockException(String.format("Пользователь с id=%d изменен другим запросом", user.getId()));
         }
         return getUser(user.getId());
     }
 
     @Override
+    @Transactional
     public void delete(long id) {
         jdbc.update(DELETE_FRIENDS, id);
         jdbc.update(DELETE_REQUESTS_TO_FRIENDS, id);
@@ -83,8 +102,9 @@ public class RealDbUserStorage implements UserStorage {
             throw new NotFoundException(String.format("Пользователь с id=%d не найден", id));
         }
         User user = users.getFirst();
-        List<Long> friends = jdbc.queryForList(SELECT_FRIENDS, Long.class, user.getId());
-        user.setFriends(new HashSet<>(friends));
+        jdbc.query(SELECT_FRIENDS, resultSet -> {
+            user.addFriend(resultSet.getLong(1));
+        }, user.getId());
         return user;
     }
 
@@ -96,8 +116,54 @@ public class RealDbUserStorage implements UserStorage {
         }
     }
 
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(jdbc.queryForList(SELECT_EXISTING_IDS, Long.class, (Object) ids.toArray(new Long[0])));
+    }
+
     @Override
     public List<User> getUsers() {
         return jdbc.query(SELECT_ALL_USERS, mapper);
     }
+
+    @Override
+    public List<User> getUsers(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return jdbc.query(SELECT_USERS_BY_IDS, mapper, (Object) ids.toArray(new Long[0]));
+    }
+
+    @Override
+    public List<User> getUsersPage(long afterId, int limit) {
+        return jdbc.query(SELECT_USERS_PAGE, mapper, afterId, limit);
+    }
+
+    @Override
+    @Transactional
+    public void addFriend(long userId, long friendId) {
+        jdbc.update(ADD_NEW_FRIEND, userId, friendId);
+        try {
+            jdbc.update(REQUEST_TO_BE_FRIEND, friendId, userId);
+        } catch (DuplicateKeyException e) {
+            // у friendId уже есть запись об этой дружбе (заявка или подтвержденная), не перетираем её
+        }
+    }
+
+    @Override
+    @Transactional
+    public void removeFriend(long userId, long friendId) {
+        jdbc.update(DELETE_FRIEND, userId, friendId);
+        jdbc.update(DELETE_REQUEST_TO_BE_FRIEND, friendId, userId);
+    }
+
+    @Override
+    public void forEachFriendship(LongPairConsumer action) {
+        jdbc.query(SELECT_ALL_FRIENDSHIPS, resultSet -> {
+            action.accept(resultSet.getLong(1), resultSet.getLong(2));
+        });
+    }
 }
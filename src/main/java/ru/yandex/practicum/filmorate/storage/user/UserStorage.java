@@ -3,8 +3,11 @@ package ru.yandex.practicum.filmorate.storage.user;
 import org.springframework.web.bind.annotation.RequestBody;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.LongPairConsumer;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface UserStorage {
 
@@ -18,5 +21,36 @@ public interface UserStorage {
 
     void ensureUserExists(long id) throws NotFoundException;
 
+    /**
+     * Возвращает те id из переданных, для которых пользователи существуют.
+     */
+    Set<Long> findExistingIds(Collection<Long> ids);
+
     List<User> getUsers();
+
+    /**
+     * Возвращает пользователей с указанными id по возрастанию id; несуществующие id пропускаются.
+     */
+    List<User> getUsers(Collection<Long> ids);
+
+    /**
+     * Возвращает до limit пользователей с id больше afterId, по возрастанию id.
+     */
+    List<User> getUsersPage(long afterId, int limit);
+
+    /**
+     * Добавляет friendId в друзья пользователю userId, остальные связи не трогает.
+     */
+    void addFriend(long userId, long friendId);
+
+    /**
+     * Убирает friendId из друзей пользователя userId, остальные связи не трогает.
+     */
+    void removeFriend(long userId, long friendId);
+
+    /**
+     * Передает в action все подтвержденные связи дружбы (пользователь, друг)
+     * по возрастанию id пользователя, а внутри пользователя - по возрастанию id друга.
+     */
+    void forEachFriendship(LongPairConsumer action);
 }
@@ -0,0 +1,252 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+
+/**
+ * Множество примитивных long на открытой адресации с линейным пробированием.
+ * В отличие от HashSet&lt;Long&gt; не создает объект на каждый элемент: при заполнении не больше
+ * чем на 3/4 на элемент уходит 8-16 байт вместо 50+. Ноль хранится отдельным флагом,
+ * потому что служит признаком пустой ячейки. Не потокобезопасно.
+ */
+public final class LongHashSet {
+    private static final int MIN_CAPACITY = 8;
+    private static final long EMPTY = 0;
+
+    private long[] keys;
+    private int size;
+    private boolean hasZero;
+    private int mask;
+    private int resizeThreshold;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    public LongHashSet(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public LongHashSet(LongHashSet other) {
+        keys = other.keys.clone();
+        size = other.size;
+        hasZero = other.hasZero;
+        mask = other.mask;
+        resizeThreshold = other.resizeThreshold;
+    }
+
+    public static LongHashSet of(long... values) {
+        LongHashSet set = new LongHashSet(values.length);
+        for (long value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int index = slot(value);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = value;
+        if (++size > resizeThreshold) {
+            allocate(keys.length * 2);
+        }
+        return true;
+    }
+
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            if (!hasZero) {
+                return false;
+            }
+            hasZero = false;
+            size--;
+            return true;
+        }
+        int index = slot(value);
+        while (keys[index] != value) {
+            if (keys[index] == EMPTY) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = EMPTY;
+        size--;
+        shiftBack(index);
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return hasZero;
+        }
+        int index = slot(value);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        hasZero = false;
+        size = 0;
+    }
+
+    public void forEach(LongConsumer action) {
+        if (hasZero) {
+            action.accept(EMPTY);
+        }
+        for (long key : keys) {
+            if (key != EMPTY) {
+                action.accept(key);
+            }
+        }
+    }
+
+    /**
+     * Передает элементы в action, пока он возвращает true; возвращает false, если обход прерван.
+     */
+    public boolean forEachWhile(LongPredicate action) {
+        if (hasZero && !action.test(EMPTY)) {
+            return false;
+        }
+        for (long key : keys) {
+            if (key != EMPTY && !action.test(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long[] toArray() {
+        long[] result = new long[size];
+        int[] position = {0};
+        forEach(value -> result[position[0]++] = value);
+        return result;
+    }
+
+    public LongStream stream() {
+        return Arrays.stream(toArray());
+    }
+
+    /**
+     * Возвращает новое множество из элементов, которые есть и в этом множестве, и в other.
+     */
+    public LongHashSet intersect(LongHashSet other) {
+        LongHashSet smaller = size <= other.size ? this : other;
+        LongHashSet larger = smaller == this ? other : this;
+        LongHashSet result = new LongHashSet(smaller.size);
+        smaller.forEach(value -> {
+            if (larger.contains(value)) {
+                result.add(value);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LongHashSet other) || other.size != size || other.hasZero != hasZero) {
+            return false;
+        }
+        for (long key : keys) {
+            if (key != EMPTY && !other.contains(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // как у java.util.Set: сумма хэшей элементов, не зависит от порядка
+        int hash = 0;
+        for (long key : keys) {
+            hash += Long.hashCode(key);
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private int slot(long value) {
+        return (int) (mix(value) & mask);
+    }
+
+    private static long mix(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+
+    /**
+     * После удаления сдвигает назад элементы той же цепочки, чтобы поиск не обрывался на дыре.
+     */
+    private void shiftBack(int freed) {
+        int index = (freed + 1) & mask;
+        while (keys[index] != EMPTY) {
+            int home = slot(keys[index]);
+            // элемент можно перенести в freed, если его "родная" ячейка не лежит между freed и index
+            if (((index - home) & mask) >= ((index - freed) & mask)) {
+                keys[freed] = keys[index];
+                keys[index] = EMPTY;
+                freed = index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void allocate(int capacity) {
+        long[] old = keys;
+        keys = new long[capacity];
+        mask = capacity - 1;
+        resizeThreshold = capacity / 4 * 3;
+        if (old != null) {
+            for (long key : old) {
+                if (key != EMPTY) {
+                    int index = slot(key);
+                    while (keys[index] != EMPTY) {
+                        index = (index + 1) & mask;
+                    }
+                    keys[index] = key;
+                }
+            }
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long capacity = Math.max(MIN_CAPACITY, (long) Math.ceil(expectedSize / 0.75));
+        return (int) Math.min(1 << 30, Long.highestOneBit(capacity - 1) << 1);
+    }
+}
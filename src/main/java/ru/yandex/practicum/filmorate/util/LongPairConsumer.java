@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.util;
+
+/**
+ * Потребитель пары long без упаковки, например пары (пользователь, друг).
+ */
+@FunctionalInterface
+public interface LongPairConsumer {
+    void accept(long first, long second);
+}
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.util;
+
+/**
+ * Набор мониторов, между которыми ключи распределяются по хэшу: изменения одного ключа
+ * сериализуются, а разные ключи почти всегда блокируют разные мониторы.
+ */
+public final class StripedLocks {
+    private final Object[] locks;
+    private final int mask;
+
+    public StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new Object[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new Object();
+        }
+        mask = size - 1;
+    }
+
+    public Object forKey(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return locks[(int) (hash >>> 32) & mask];
+    }
+}
@@ -19,9 +19,14 @@ CREATE TABLE IF NOT EXISTS PUBLIC.FILM (
     RELEASE_DATE DATE,
     DURATION INTEGER NOT NULL,
     MPA_RATING_ID INTEGER NOT null,
+    LIKE_COUNT BIGINT DEFAULT 0 NOT NULL,
+    VERSION BIGINT DEFAULT 1 NOT NULL,
     CONSTRAINT FILM_PK PRIMARY KEY (ID)
 );
+ALTER TABLE PUBLIC.FILM ADD COLUMN IF NOT EXISTS LIKE_COUNT BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE PUBLIC.FILM ADD COLUMN IF NOT EXISTS VERSION BIGINT DEFAULT 1 NOT NULL;
 CREATE INDEX IF NOT EXISTS FILM_MPA_RATING_FK_INDEX ON PUBLIC.FILM (MPA_RATING_ID);
+CREATE INDEX IF NOT EXISTS FILM_LIKE_COUNT_INDEX ON PUBLIC.FILM (LIKE_COUNT DESC, ID);
 
 -- PUBLIC.FILM внешние включи
 
@@ -44,8 +49,10 @@ CREATE TABLE IF NOT EXISTS PUBLIC."USER" (
     NAME CHARACTER VARYING(40),
     LOGIN CHARACTER VARYING(40),
     BIRTHDATE DATE,
+    VERSION BIGINT DEFAULT 1 NOT NULL,
     CONSTRAINT USER_PK PRIMARY KEY (ID)
 );
+ALTER TABLE PUBLIC."USER" ADD COLUMN IF NOT EXISTS VERSION BIGINT DEFAULT 1 NOT NULL;
 CREATE UNIQUE INDEX IF NOT EXISTS USER_EMAIL_INDEX ON PUBLIC."USER" (EMAIL);
 CREATE UNIQUE INDEX IF NOT EXISTS USER_NAME_INDEX ON PUBLIC."USER" (NAME);
 CREATE UNIQUE INDEX IF NOT EXISTS USER_LOGIN_INDEX ON PUBLIC."USER" (login);
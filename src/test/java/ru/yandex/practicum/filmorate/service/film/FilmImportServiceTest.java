@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.yandex.practicum.filmorate.dto.FilmImportErrorDto;
+import ru.yandex.practicum.filmorate.dto.FilmImportResultDto;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FilmImportServiceTest {
+	private static final String HEADER = "name,description,releaseDate,duration,mpa,genres\n";
+
+	private static final int BENCHMARK_RECORDS = 200_000;
+
+	private FilmService filmService;
+	private GenreStorage genreStorage;
+	private MpaStorage mpaStorage;
+	private FilmImportService importService;
+
+	@BeforeEach
+	public void beforeEach() {
+		filmService = mock(FilmService.class);
+		genreStorage = mock(GenreStorage.class);
+		when(genreStorage.getAll()).thenReturn(IntStream.rangeClosed(1, 6).mapToObj(id -> {
+			Genre genre = new Genre();
+			genre.setId(id);
+			return genre;
+		}).toList());
+		mpaStorage = mock(MpaStorage.class);
+		MpaRating mpaRating = new MpaRating();
+		mpaRating.setId(1);
+		when(mpaStorage.getAll()).thenReturn(List.of(mpaRating));
+		importService = new FilmImportService(filmService, genreStorage, mpaStorage, new ObjectMapper(), 1000);
+	}
+
+	@Test
+	public void importFilms_columnLimits_shouldFailOnlyThoseLinesAndDeduplicateGenres() throws Exception {
+		String csv = HEADER
+				+ "Хороший,Описание,2000-01-01,100,1,1|2\n"
+				+ "x".repeat(41) + ",Описание,2000-01-01,100,1,\n"
+				+ "Длинное описание," + "x".repeat(101) + ",2000-01-01,100,1,\n"
+				+ "Повтор жанра,Описание,2000-01-01,100,1,2|2\n";
+		List<Film> created = new ArrayList<>();
+		when(filmService.createFilms(anyList())).thenAnswer(invocation -> {
+			List<Film> films = invocation.getArgument(0);
+			created.addAll(films);
+			return films;
+		});
+
+		FilmImportResultDto result = importService.importFilms(stream(csv), FilmImportService.Format.CSV);
+
+		assertEquals(2, result.getImported());
+		assertEquals(List.of(3L, 4L), result.getErrors().stream().map(FilmImportErrorDto::getLine).toList());
+		Film repeated = created.stream().filter(film -> film.getName().equals("Повтор жанра")).findFirst().orElseThrow();
+		assertEquals(List.of(2), repeated.getGenres().stream().map(Genre::getId).toList());
+	}
+
+	@Test
+	public void importFilms_batchRejectedByDatabase_shouldRetryRecordsOneByOne() throws Exception {
+		String csv = HEADER
+				+ "Первый,Описание,2000-01-01,100,1,\n"
+				+ "Плохой,Описание,2000-01-01,100,1,\n"
+				+ "Третий,Описание,2000-01-01,100,1,\n";
+		when(filmService.createFilms(anyList())).thenAnswer(invocation -> {
+			List<Film> films = invocation.getArgument(0);
+			if (films.stream().anyMatch(film -> film.getName().equals("Плохой"))) {
+				throw new DataIntegrityViolationException("нарушено ограничение");
+			}
+			return films;
+		});
+
+		FilmImportResultDto result = importService.importFilms(stream(csv), FilmImportService.Format.CSV);
+
+		assertEquals(2, result.getImported());
+		assertEquals(1, result.getFailed());
+		assertEquals(3L, result.getErrors().getFirst().getLine());
+	}
+
+	/**
+	 * Замер скорости разбора и валидации при разных размерах пачки (запись в хранилище подменена).
+	 * Запускается только по -Dfilmorate.benchmark=true.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "filmorate.benchmark", matches = "true")
+	public void importFilms_benchmark_recordsPerSecondByBatchSize() throws Exception {
+		StringBuilder csv = new StringBuilder(HEADER);
+		for (int i = 0; i < BENCHMARK_RECORDS; i++) {
+			csv.append("Фильм ").append(i).append(",Описание,2000-01-01,100,1,1|").append(i % 6 + 1).append('\n');
+		}
+		byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+		when(filmService.createFilms(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+		for (int batchSize : new int[]{100, 1000, 10_000}) {
+			FilmImportService service = new FilmImportService(filmService, genreStorage, mpaStorage,
+					new ObjectMapper(), batchSize);
+			// прогрев JIT
+			service.importFilms(new ByteArrayInputStream(bytes), FilmImportService.Format.CSV);
+			long started = System.nanoTime();
+			FilmImportResultDto result = service.importFilms(new ByteArrayInputStream(bytes), FilmImportService.Format.CSV);
+			long nanos = System.nanoTime() - started;
+
+			System.out.printf("Пачка %d: %.0f записей/с%n", batchSize, BENCHMARK_RECORDS / (nanos / 1e9));
+			assertEquals(BENCHMARK_RECORDS, result.getImported());
+		}
+	}
+
+	private static ByteArrayInputStream stream(String text) {
+		return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dto.LikeImportErrorDto;
+import ru.yandex.practicum.filmorate.dto.LikeImportResultDto;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LikeImportServiceTest {
+	private LikeImportService importService;
+	private long filmId;
+	private long userId;
+
+	@BeforeEach
+	public void beforeEach() {
+		InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+		InMemoryUserStorage userStorage = new InMemoryUserStorage();
+		filmId = filmStorage.create(film()).getId();
+		userId = userStorage.create(user()).getId();
+		FilmService filmService = mock(FilmService.class);
+		when(filmService.applyLikes(anyList(), anyList())).thenAnswer(invocation ->
+				filmStorage.applyLikes(invocation.getArgument(0), invocation.getArgument(1)));
+		importService = new LikeImportService(filmService, filmStorage, userStorage, new ObjectMapper(), 2);
+	}
+
+	@Test
+	public void importLikes_malformedLinesAndRepeats_shouldReportLinesAndCountOnlyChanges() throws Exception {
+		String events = event(filmId, userId, "add")
+				+ "{\"filmId\": 1, \"userId\": \n"
+				+ event(filmId + 100, userId, "add")
+				+ event(filmId, userId, "add")
+				+ event(filmId, userId + 100, "remove");
+
+		LikeImportResultDto result = importService.importLikes(stream(events));
+
+		assertEquals(5, result.getReceived());
+		assertEquals(1, result.getAdded());
+		assertEquals(0, result.getRemoved());
+		assertEquals(3, result.getInvalid());
+		assertEquals(List.of(2L, 3L, 5L), result.getErrors().stream().map(LikeImportErrorDto::getLine).toList());
+	}
+
+	private static String event(long filmId, long userId, String op) {
+		return String.format("{\"filmId\": %d, \"userId\": %d, \"op\": \"%s\"}%n", filmId, userId, op);
+	}
+
+	private static ByteArrayInputStream stream(String text) {
+		return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Film film() {
+		Film film = new Film();
+		film.setName("Фильм");
+		film.setDescription("Описание");
+		film.setReleaseDate(LocalDate.of(2000, 1, 1));
+		film.setDuration(100);
+		return film;
+	}
+
+	private static User user() {
+		User user = new User();
+		user.setLogin("login");
+		user.setEmail("login@mail.ru");
+		user.setBirthday(LocalDate.of(1990, 1, 1));
+		return user;
+	}
+}
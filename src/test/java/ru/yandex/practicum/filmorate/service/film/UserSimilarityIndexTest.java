@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сравнение LSH-поиска похожих пользователей с точным перебором по коэффициенту Жаккара
+ * на синтетических данных: пользователи поделены на кластеры по вкусам и лайкают примерно
+ * половину фильмов своего кластера плюс несколько случайных.
+ */
+class UserSimilarityIndexTest {
+	private static final int USERS = 5000;
+	private static final int CLUSTERS = 50;
+	private static final int FILMS_PER_CLUSTER = 30;
+	private static final int QUERIES = 100;
+	private static final int LIMIT = 10;
+
+	private LikeMatrix likeMatrix;
+	private UserSimilarityIndex index;
+
+	@BeforeEach
+	public void beforeEach() {
+		likeMatrix = new LikeMatrix(new InMemoryFilmStorage(), 50, 10000);
+		likeMatrix.load();
+		index = new UserSimilarityIndex(likeMatrix, 32, 2, 5000);
+	}
+
+	@Test
+	public void similar_syntheticClusters_shouldMatchExactJaccardTopWithHighRecall() {
+		Random random = new Random(7);
+		fillClusters(random);
+		index.load();
+
+		long[] allUsers = LongStream.rangeClosed(1, USERS).toArray();
+		double recall = 0;
+		for (int query = 0; query < QUERIES; query++) {
+			long userId = random.nextInt(USERS) + 1;
+			long[] found = index.similar(userId, LIMIT);
+			Set<Long> exact = exactTop(userId, allUsers);
+			recall += Arrays.stream(found).filter(exact::contains).count() / (double) LIMIT;
+		}
+		recall /= QUERIES;
+
+		assertTrue(recall >= 0.9, "recall@" + LIMIT + " = " + recall);
+	}
+
+	/**
+	 * Замер задержки: LSH против точного перебора, в мс на запрос. Запускается только по
+	 * -Dfilmorate.benchmark=true, чтобы время не шумело в обычной сборке.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "filmorate.benchmark", matches = "true")
+	public void similar_benchmark_lshVersusExactLatency() {
+		Random random = new Random(7);
+		fillClusters(random);
+		index.load();
+		long[] allUsers = LongStream.rangeClosed(1, USERS).toArray();
+		long[] queries = random.longs(QUERIES, 1, USERS + 1).toArray();
+		// прогрев JIT на тех же запросах
+		for (long userId : queries) {
+			index.similar(userId, LIMIT);
+			exactTop(userId, allUsers);
+		}
+
+		long start = System.nanoTime();
+		for (long userId : queries) {
+			index.similar(userId, LIMIT);
+		}
+		long lshNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (long userId : queries) {
+			exactTop(userId, allUsers);
+		}
+		long exactNanos = System.nanoTime() - start;
+
+		System.out.printf("Пользователей %d: LSH %.3f мс/запрос, точный перебор %.3f мс/запрос%n",
+				USERS, lshNanos / 1e6 / QUERIES, exactNanos / 1e6 / QUERIES);
+		assertTrue(lshNanos < exactNanos, "LSH не быстрее точного перебора");
+	}
+
+	@Test
+	public void similar_afterLikeRemoved_shouldRecomputeSignature() {
+		likeMatrix.addLike(1, 1);
+		likeMatrix.addLike(2, 1);
+		likeMatrix.addLike(1, 2);
+		likeMatrix.addLike(2, 2);
+		likeMatrix.addLike(3, 3);
+		index.load();
+		assertArrayEquals(new long[]{2}, index.similar(1, LIMIT));
+
+		likeMatrix.removeLike(1, 2);
+		likeMatrix.removeLike(2, 2);
+		likeMatrix.addLike(3, 2);
+		index.likesChanged(2);
+
+		assertArrayEquals(new long[]{3}, index.similar(2, LIMIT));
+		assertArrayEquals(new long[0], index.similar(1, LIMIT));
+	}
+
+	/**
+	 * Каждый пользователь лайкает примерно половину фильмов своего кластера и три случайных фильма.
+	 */
+	private void fillClusters(Random random) {
+		for (long userId = 1; userId <= USERS; userId++) {
+			int cluster = random.nextInt(CLUSTERS);
+			for (int film = 1; film <= FILMS_PER_CLUSTER; film++) {
+				if (random.nextBoolean()) {
+					likeMatrix.addLike((long) cluster * FILMS_PER_CLUSTER + film, userId);
+				}
+			}
+			for (int i = 0; i < 3; i++) {
+				likeMatrix.addLike(random.nextInt(CLUSTERS * FILMS_PER_CLUSTER) + 1, userId);
+			}
+		}
+	}
+
+	private Set<Long> exactTop(long userId, long[] allUsers) {
+		double[] similarity = likeMatrix.jaccard(userId, allUsers);
+		return LongStream.range(0, allUsers.length)
+				.filter(i -> allUsers[(int) i] != userId)
+				.boxed()
+				.sorted(Comparator.<Long>comparingDouble(i -> -similarity[i.intValue()])
+						.thenComparingLong(i -> allUsers[i.intValue()]))
+				.limit(LIMIT)
+				.map(i -> allUsers[i.intValue()])
+				.collect(Collectors.toSet());
+	}
+}
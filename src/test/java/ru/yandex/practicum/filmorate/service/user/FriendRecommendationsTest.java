@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.service.user;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class FriendRecommendationsTest {
+	private InMemoryUserStorage storage;
+	private FriendshipGraph graph;
+	private FriendRecommendations recommendations;
+	private long[] ids;
+
+	@BeforeEach
+	public void setUp() {
+		storage = new InMemoryUserStorage();
+		ids = new long[6];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = storage.create(user("user" + i)).getId();
+		}
+		graph = new FriendshipGraph(storage, 1000);
+		graph.load();
+		recommendations = new FriendRecommendations(graph, 1000, 100, 100);
+	}
+
+	@Test
+	public void recommend_shouldRankByMutualFriendsThenById() {
+		// у ids[0] друзья ids[1] и ids[2]; ids[5] дружит с обоими, ids[3] и ids[4] - с одним
+		addFriend(0, 1);
+		addFriend(0, 2);
+		addFriend(1, 4);
+		addFriend(1, 5);
+		addFriend(2, 5);
+		addFriend(2, 3);
+		addFriend(2, 0);
+
+		assertArrayEquals(new long[]{ids[5], ids[3], ids[4]}, recommendations.recommend(ids[0], 10));
+		assertArrayEquals(new long[]{ids[5], ids[3]}, recommendations.recommend(ids[0], 2));
+	}
+
+	@Test
+	public void recommend_maxResults_shouldKeepBestCandidates() {
+		recommendations = new FriendRecommendations(graph, 1000, 2, 100);
+		addFriend(0, 1);
+		addFriend(0, 2);
+		addFriend(1, 3);
+		addFriend(1, 4);
+		addFriend(1, 5);
+		addFriend(2, 4);
+
+		assertArrayEquals(new long[]{ids[4], ids[3]}, recommendations.recommend(ids[0], 10));
+	}
+
+	@Test
+	public void recommend_friendOfFriendChanged_shouldRecompute() {
+		addFriend(0, 1);
+		addFriend(1, 3);
+		assertArrayEquals(new long[]{ids[3]}, recommendations.recommend(ids[0], 10));
+
+		addFriend(1, 4);
+
+		assertArrayEquals(new long[]{ids[3], ids[4]}, recommendations.recommend(ids[0], 10));
+	}
+
+	@Test
+	public void recommend_newFriend_shouldNotBeRecommended() {
+		addFriend(0, 1);
+		addFriend(1, 3);
+		assertArrayEquals(new long[]{ids[3]}, recommendations.recommend(ids[0], 10));
+
+		addFriend(0, 3);
+
+		assertArrayEquals(new long[0], recommendations.recommend(ids[0], 10));
+	}
+
+	private void addFriend(int user, int friend) {
+		storage.addFriend(ids[user], ids[friend]);
+		graph.addEdge(ids[user], ids[friend]);
+		recommendations.friendshipChanged(ids[user]);
+	}
+
+	private static User user(String login) {
+		User user = new User();
+		user.setLogin(login);
+		user.setEmail(login + "@mail.ru");
+		user.setBirthday(LocalDate.of(1990, 1, 1));
+		return user;
+	}
+}
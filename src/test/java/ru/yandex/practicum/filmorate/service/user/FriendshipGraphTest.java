@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.service.user;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.util.LongPairConsumer;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FriendshipGraphTest {
+
+	@Test
+	public void load_shouldRepairGraphThatDivergedFromStorage() {
+		InMemoryUserStorage storage = new InMemoryUserStorage();
+		long first = storage.create(user("first")).getId();
+		long second = storage.create(user("second")).getId();
+		FriendshipGraph graph = new FriendshipGraph(storage, 1000);
+		graph.load();
+
+		storage.addFriend(first, second);
+		graph.load();
+
+		assertArrayEquals(new long[]{second}, graph.neighbors(first));
+	}
+
+	@Test
+	public void load_changesDuringScan_shouldKeepCurrentEdges() {
+		long[] ids = new long[3];
+		FriendshipGraph[] graph = new FriendshipGraph[1];
+		InMemoryUserStorage storage = new InMemoryUserStorage() {
+			@Override
+			public void forEachFriendship(LongPairConsumer action) {
+				super.forEachFriendship(action);
+				// изменения, которые прочитанное состояние уже не застало
+				addFriend(ids[0], ids[2]);
+				graph[0].addEdge(ids[0], ids[2]);
+				removeFriend(ids[0], ids[1]);
+				graph[0].removeEdge(ids[0], ids[1]);
+			}
+		};
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = storage.create(user("user" + i)).getId();
+		}
+		storage.addFriend(ids[0], ids[1]);
+		graph[0] = new FriendshipGraph(storage, 1000);
+
+		graph[0].load();
+
+		assertArrayEquals(new long[]{ids[2]}, graph[0].neighbors(ids[0]));
+	}
+
+	@Test
+	public void forEachNeighbor_withLimit_shouldStopAfterLimitInBaseAndDelta() {
+		InMemoryUserStorage storage = new InMemoryUserStorage();
+		long hub = storage.create(user("hub")).getId();
+		for (int i = 0; i < 5; i++) {
+			storage.addFriend(hub, storage.create(user("base" + i)).getId());
+		}
+		FriendshipGraph graph = new FriendshipGraph(storage, 1000);
+		graph.load();
+		for (int i = 0; i < 5; i++) {
+			graph.addEdge(hub, storage.create(user("delta" + i)).getId());
+		}
+
+		int[] visited = {0};
+		graph.forEachNeighbor(hub, 3, friendId -> visited[0]++);
+		assertEquals(3, visited[0]);
+		visited[0] = 0;
+		graph.forEachNeighbor(hub, 7, friendId -> visited[0]++);
+		assertEquals(7, visited[0]);
+		visited[0] = 0;
+		graph.forEachNeighbor(hub, 100, friendId -> visited[0]++);
+		assertEquals(10, visited[0]);
+	}
+
+	private static User user(String login) {
+		User user = new User();
+		user.setLogin(login);
+		user.setEmail(login + "@mail.ru");
+		user.setBirthday(LocalDate.of(1990, 1, 1));
+		return user;
+	}
+}
@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LruCacheTest {
+
+	@Test
+	public void getOrLoad_invalidatedDuringLoad_shouldNotCacheLoadedValue() {
+		LruCache<Long, String> cache = new LruCache<>("test", 10, 1000, value -> 1);
+
+		// обновление ключа, пришедшее, пока загружалось старое значение
+		String loaded = cache.getOrLoad(1L, key -> {
+			cache.invalidate(key);
+			return "старое";
+		});
+
+		assertEquals("старое", loaded);
+		assertFalse(cache.contains(1L));
+		assertEquals("новое", cache.getOrLoad(1L, key -> "новое"));
+		assertTrue(cache.contains(1L));
+	}
+
+	@Test
+	public void contains_shouldNotCountHitsOrMisses() {
+		LruCache<Long, String> cache = new LruCache<>("test", 10, 1000, value -> 1);
+		cache.getOrLoad(1L, key -> "значение");
+		cache.getOrLoad(1L, key -> "значение");
+
+		cache.contains(1L);
+		cache.contains(2L);
+
+		CacheStats stats = cache.getStats();
+		assertEquals(1, stats.hits());
+		assertEquals(1, stats.misses());
+	}
+}
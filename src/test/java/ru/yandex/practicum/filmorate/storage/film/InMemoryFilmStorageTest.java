@@ -0,0 +1,216 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import ru.yandex.practicum.filmorate.exception.OptimisticLockException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.OptimisticRetry;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryFilmStorageTest {
+	private static final int THREADS = 8;
+	private static final int FILMS_PER_THREAD = 2000;
+	private static final int USERS = 50;
+	private static final int WRITERS = 64;
+	private static final int INCREMENTS_PER_WRITER = 200;
+
+	private InMemoryFilmStorage storage;
+
+	@BeforeEach
+	public void beforeEach() {
+		storage = new InMemoryFilmStorage();
+	}
+
+	@Test
+	public void createAndLike_concurrently_shouldAssignUniqueIdsAndKeepCounts() throws Exception {
+		Set<Long> ids = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int thread = 0; thread < THREADS; thread++) {
+			futures.add(executor.submit(() -> {
+				start.await();
+				for (int i = 0; i < FILMS_PER_THREAD; i++) {
+					ids.add(storage.create(film()).getId());
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get();
+		}
+
+		// каждый поток лайкает первый фильм от имени всех пользователей - лайк должен засчитаться один раз
+		futures.clear();
+		for (int thread = 0; thread < THREADS; thread++) {
+			futures.add(executor.submit(() -> {
+				for (long userId = 1; userId <= USERS; userId++) {
+					storage.addLike(1, userId);
+					storage.getFilm(1);
+				}
+				return null;
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertEquals(THREADS * FILMS_PER_THREAD, ids.size());
+		assertEquals(THREADS * FILMS_PER_THREAD, storage.getFilms().size());
+		assertEquals(USERS, storage.getFilm(1).getLikeCount());
+		assertEquals(USERS, storage.getUsersWhoLiked(1).size());
+	}
+
+	/**
+	 * Замер пропускной способности создания фильмов и лайков в THREADS потоков. Запускается только по
+	 * -Dfilmorate.benchmark=true.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "filmorate.benchmark", matches = "true")
+	public void createAndLike_benchmark_throughput() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		long createNanos = runInThreads(executor, thread -> {
+			for (int i = 0; i < FILMS_PER_THREAD; i++) {
+				storage.create(film());
+			}
+		});
+		long likeNanos = runInThreads(executor, thread -> {
+			for (int i = 0; i < FILMS_PER_THREAD; i++) {
+				storage.addLike((long) thread * FILMS_PER_THREAD + i + 1, thread + 1);
+			}
+		});
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		int operations = THREADS * FILMS_PER_THREAD;
+		System.out.printf("%d потоков: создание %.0f операций/с, лайки %.0f операций/с%n", THREADS,
+				operations / (createNanos / 1e9), operations / (likeNanos / 1e9));
+		assertEquals(operations, storage.getFilms().size());
+	}
+
+	@Test
+	public void getPopularFilms_shouldSortByLikesThenId() {
+		Film first = storage.create(film());
+		Film second = storage.create(film());
+		Film third = storage.create(film());
+		storage.addLike(third.getId(), 1);
+		storage.addLike(third.getId(), 2);
+		storage.addLike(second.getId(), 1);
+
+		List<Film> popular = storage.getPopularFilms(3);
+
+		assertEquals(List.of(third.getId(), second.getId(), first.getId()),
+				popular.stream().map(Film::getId).toList());
+		assertEquals(List.of(third.getId(), second.getId()),
+				storage.getPopularFilms(2).stream().map(Film::getId).toList());
+		assertEquals(2, storage.getPopularFilms(1).get(0).getLikeCount());
+	}
+
+	@Test
+	public void getFilm_shouldNotExposeStoredLikers() {
+		Film film = storage.create(film());
+		storage.addLike(film.getId(), 1);
+
+		Film read = storage.getFilm(film.getId());
+		read.addUserWhoLiked(2);
+
+		assertEquals(1, storage.getFilm(film.getId()).getLikeCount());
+		assertEquals(1, storage.getUsersWhoLiked(film.getId()).size());
+	}
+
+	@Test
+	public void update_staleVersion_shouldConflict() {
+		Film film = storage.create(film());
+		Film first = storage.getFilm(film.getId());
+		Film second = storage.getFilm(film.getId());
+
+		storage.update(first);
+
+		assertThrows(OptimisticLockException.class, () -> storage.update(second));
+		assertEquals(2, storage.getFilm(film.getId()).getVersion());
+	}
+
+	@Test
+	public void update_concurrentReadModifyWrite_withRetry_shouldNotLoseUpdates() throws Exception {
+		long filmId = storage.create(film()).getId();
+		OptimisticRetry retry = new OptimisticRetry(Integer.MAX_VALUE, 1, 10);
+		ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int writer = 0; writer < WRITERS; writer++) {
+			futures.add(executor.submit(() -> {
+				start.await();
+				for (int i = 0; i < INCREMENTS_PER_WRITER; i++) {
+					// чтение, изменение и запись со сравнением версий, как в FilmService.update
+					retry.run(() -> {
+						Film current = storage.getFilm(filmId);
+						current.setDuration(current.getDuration() + 1);
+						return storage.update(current);
+					});
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		int updates = WRITERS * INCREMENTS_PER_WRITER;
+		Film film = storage.getFilm(filmId);
+		assertEquals(100 + updates, film.getDuration());
+		assertEquals(1 + updates, film.getVersion());
+	}
+
+	/**
+	 * Запускает action в THREADS потоках одновременно и возвращает время до завершения последнего.
+	 */
+	private static long runInThreads(ExecutorService executor, IntConsumer action) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int thread = 0; thread < THREADS; thread++) {
+			int number = thread;
+			futures.add(executor.submit(() -> {
+				start.await();
+				action.accept(number);
+				return null;
+			}));
+		}
+		long startedAt = System.nanoTime();
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		return System.nanoTime() - startedAt;
+	}
+
+	private Film film() {
+		Film film = new Film();
+		film.setName("name");
+		film.setDescription("description");
+		film.setReleaseDate(LocalDate.of(2000, 1, 1));
+		film.setDuration(100);
+		return film;
+	}
+}
@@ -0,0 +1,241 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OffHeapFilmStorageTest {
+	private static final int BENCHMARK_FILMS = 200_000;
+	private static final int LIKES_PER_FILM = 5;
+	private static final int READS_PER_FILM = 3;
+
+	private OffHeapFilmStorage storage;
+
+	@BeforeEach
+	public void beforeEach() {
+		GenreStorage genreStorage = mock(GenreStorage.class);
+		when(genreStorage.get(anyInt())).thenAnswer(invocation -> genre(invocation.getArgument(0)));
+		MpaStorage mpaStorage = mock(MpaStorage.class);
+		when(mpaStorage.get(anyInt())).thenAnswer(invocation -> mpa(invocation.getArgument(0)));
+		storage = new OffHeapFilmStorage(genreStorage, mpaStorage);
+	}
+
+	@Test
+	public void createAndUpdate_shouldReadBackAllFields() {
+		Film created = storage.create(film("Фильм", "Описание", 3, List.of(1, 4)));
+
+		Film read = storage.getFilm(created.getId());
+		assertEquals("Фильм", read.getName());
+		assertEquals("Описание", read.getDescription());
+		assertEquals(LocalDate.of(2001, 2, 3), read.getReleaseDate());
+		assertEquals(120, read.getDuration());
+		assertEquals(3, read.getMpaRating().getId());
+		assertEquals(List.of(1, 4), read.getGenres().stream().map(Genre::getId).toList());
+
+		Film changed = film("Новое название", null, 0, List.of());
+		changed.setId(created.getId());
+		changed.setMpaRating(null);
+		changed.setVersion(created.getVersion());
+		Film updated = storage.update(changed);
+		assertEquals("Новое название", updated.getName());
+		assertEquals(created.getVersion() + 1, updated.getVersion());
+		assertEquals(null, updated.getDescription());
+		assertEquals(3, updated.getMpaRating().getId());
+		assertEquals(List.of(), storage.getFilm(created.getId()).getGenres());
+	}
+
+	@Test
+	public void likesAndDelete_shouldKeepCountsAndOrder() {
+		Film first = storage.create(film("Первый", "", 1, List.of()));
+		Film second = storage.create(film("Второй", "", 1, List.of()));
+		Film third = storage.create(film("Третий", "", 1, List.of()));
+		storage.addLike(second.getId(), 1);
+		storage.addLike(second.getId(), 2);
+		storage.addLike(third.getId(), 1);
+		storage.addLike(third.getId(), 1);
+
+		assertEquals(List.of(second.getId(), third.getId()),
+				storage.getPopularFilms(2).stream().map(Film::getId).toList());
+		assertEquals(2, storage.getFilm(second.getId()).getLikeCount());
+
+		storage.delete(second.getId());
+		assertThrows(NotFoundException.class, () -> storage.getFilm(second.getId()));
+		assertThrows(NotFoundException.class, () -> storage.addLike(second.getId(), 3));
+		assertEquals(List.of(third.getId(), first.getId()),
+				storage.getPopularFilms(10).stream().map(Film::getId).toList());
+		assertEquals(List.of(third.getId()), storage.getFilmsPage(first.getId(), 10).stream().map(Film::getId).toList());
+	}
+
+	@Test
+	public void compact_shouldKeepLiveDataAndReleaseOldChunks() {
+		Film kept = storage.create(film("Оставленный", "Описание".repeat(1 << 19), 1, List.of(2)));
+		// не помещается в первый кусок области рядом с первым фильмом и занимает второй
+		Film deleted = storage.create(film("Удаленный", "x".repeat(9 << 20), 1, List.of()));
+		Film updated = storage.create(film("Старое название", "", 1, List.of()));
+		storage.delete(deleted.getId());
+		Film changed = film("Новое название", "Новое описание", 1, List.of(3, 5));
+		changed.setId(updated.getId());
+		changed.setVersion(updated.getVersion());
+		storage.update(changed);
+		long before = storage.getOffHeapBytes();
+
+		storage.compact();
+
+		assertTrue(storage.getOffHeapBytes() < before);
+		Film read = storage.getFilm(kept.getId());
+		assertEquals("Оставленный", read.getName());
+		assertEquals("Описание".repeat(1 << 19), read.getDescription());
+		assertEquals(List.of(2), read.getGenres().stream().map(Genre::getId).toList());
+		Film readUpdated = storage.getFilm(updated.getId());
+		assertEquals("Новое название", readUpdated.getName());
+		assertEquals("Новое описание", readUpdated.getDescription());
+		assertEquals(List.of(3, 5), readUpdated.getGenres().stream().map(Genre::getId).toList());
+
+		Film afterCompaction = storage.create(film("После уплотнения", "", 1, List.of()));
+		assertEquals("После уплотнения", storage.getFilm(afterCompaction.getId()).getName());
+	}
+
+	/**
+	 * Сравнение с InMemoryFilmStorage: занятая куча после загрузки BENCHMARK_FILMS фильмов (по два жанра)
+	 * и пяти лайков на фильм, затем паузы молодых сборок и время на смеси чтений с лайками и топом-10.
+	 * Число фильмов задается -Dfilmorate.benchmark.films (для миллиона нужен -Xmx2g).
+	 * Запускается только по -Dfilmorate.benchmark=true.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "filmorate.benchmark", matches = "true")
+	public void workload_benchmark_heapAndGcPausesComparedToInMemory() throws Exception {
+		int films = Integer.getInteger("filmorate.benchmark.films", BENCHMARK_FILMS);
+
+		InMemoryFilmStorage inMemoryStorage = new InMemoryFilmStorage();
+		Workload inMemory = runWorkload(inMemoryStorage, inMemoryStorage::getPopularFilms, films);
+		// отпускаем хранилище в куче, чтобы оно не мешало сборкам во втором прогоне
+		inMemoryStorage = null;
+		Workload offHeap = runWorkload(storage, storage::getPopularFilms, films);
+
+		System.out.printf("%d фильмов, куча после полной сборки: %d МБ -> %d МБ (вне кучи %d МБ)%n", films,
+				inMemory.heapBytes() >> 20, offHeap.heapBytes() >> 20, storage.getOffHeapBytes() >> 20);
+		System.out.printf("Паузы молодых сборок p50/p99/max: %s -> %s мс%n", inMemory.pauses(), offHeap.pauses());
+		System.out.printf("Время нагрузки: %.1f с -> %.1f с%n", inMemory.nanos() / 1e9, offHeap.nanos() / 1e9);
+		assertTrue(offHeap.heapBytes() < inMemory.heapBytes());
+	}
+
+	private static Workload runWorkload(FilmStorage target, LongFunction<List<Film>> popular, int films)
+			throws Exception {
+		Queue<Long> pauses = new ConcurrentLinkedQueue<>();
+		NotificationListener listener = (notification, handback) -> {
+			if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+				GarbageCollectionNotificationInfo info =
+						GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+				if (info.getGcAction().equals("end of minor GC")) {
+					pauses.add(info.getGcInfo().getDuration());
+				}
+			}
+		};
+		List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		collectors.forEach(collector -> ((NotificationEmitter) collector).addNotificationListener(listener, null, null));
+		try {
+			Random random = new Random(1);
+			long before = usedHeapAfterGc();
+			for (int i = 0; i < films; i++) {
+				target.create(film("Фильм " + i, "Описание фильма " + i, i % 5 + 1, List.of(i % 6 + 1, (i + 1) % 6 + 1)));
+			}
+			for (long i = 0; i < (long) films * LIKES_PER_FILM; i++) {
+				target.addLike(random.nextInt(films) + 1, random.nextInt(films) + 1);
+			}
+			long heapBytes = usedHeapAfterGc() - before;
+
+			pauses.clear();
+			long started = System.nanoTime();
+			for (int i = 0; i < films * READS_PER_FILM; i++) {
+				target.getFilm(random.nextInt(films) + 1);
+				if (i % 10 == 0) {
+					target.addLike(random.nextInt(films) + 1, random.nextInt(films) + 1);
+				}
+				if (i % 1000 == 0) {
+					popular.apply(10);
+				}
+			}
+			long nanos = System.nanoTime() - started;
+			// уведомления о сборках приходят асинхронно
+			Thread.sleep(500);
+			return new Workload(heapBytes, nanos, percentiles(pauses));
+		} finally {
+			for (GarbageCollectorMXBean collector : collectors) {
+				((NotificationEmitter) collector).removeNotificationListener(listener);
+			}
+		}
+	}
+
+	private static String percentiles(Collection<Long> pauses) {
+		long[] sorted = pauses.stream().mapToLong(Long::longValue).sorted().toArray();
+		if (sorted.length == 0) {
+			return "-";
+		}
+		return sorted[(sorted.length - 1) / 2] + "/" + sorted[(int) Math.ceil(sorted.length * 0.99) - 1]
+				+ "/" + sorted[sorted.length - 1];
+	}
+
+	private static long usedHeapAfterGc() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	private record Workload(long heapBytes, long nanos, String pauses) {
+	}
+
+	private static Film film(String name, String description, int mpaId, List<Integer> genreIds) {
+		Film film = new Film();
+		film.setName(name);
+		film.setDescription(description);
+		film.setReleaseDate(LocalDate.of(2001, 2, 3));
+		film.setDuration(120);
+		film.setMpaRating(mpa(mpaId));
+		film.setGenres(genreIds.stream().map(OffHeapFilmStorageTest::genre).toList());
+		return film;
+	}
+
+	private static Genre genre(int id) {
+		Genre genre = new Genre();
+		genre.setId(id);
+		genre.setName("Жанр " + id);
+		return genre;
+	}
+
+	private static MpaRating mpa(int id) {
+		MpaRating mpaRating = new MpaRating();
+		mpaRating.setId(id);
+		mpaRating.setName("Рейтинг " + id);
+		return mpaRating;
+	}
+}
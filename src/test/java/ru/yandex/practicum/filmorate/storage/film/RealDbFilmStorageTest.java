@@ -0,0 +1,181 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.KeyHolder;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.OptimisticLockException;
+import ru.yandex.practicum.filmorate.mappers.film.FilmRowMapper;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RealDbFilmStorageTest {
+	private static final int GENRES_COUNT = 6;
+
+	private JdbcTemplate jdbc;
+	private RealDbFilmStorage storage;
+
+	@BeforeEach
+	public void beforeEach() {
+		jdbc = mock(JdbcTemplate.class);
+		doAnswer(invocation -> {
+			KeyHolder keyHolder = invocation.getArgument(1);
+			keyHolder.getKeyList().add(Map.of("ID", 1L));
+			return 1;
+		}).when(jdbc).update(any(PreparedStatementCreator.class), any(KeyHolder.class));
+		GenreStorage genreStorage = mock(GenreStorage.class);
+		when(genreStorage.get(anyInt())).thenAnswer(invocation -> {
+			Genre genre = new Genre();
+			genre.setId(invocation.getArgument(0));
+			return genre;
+		});
+		MpaStorage mpaStorage = mock(MpaStorage.class);
+		when(mpaStorage.get(anyInt())).thenReturn(new MpaRating());
+		storage = new RealDbFilmStorage(jdbc, new FilmRowMapper(mpaStorage), genreStorage, mpaStorage);
+	}
+
+	@Test
+	public void create_manyGenres_shouldInsertGenresInOneBatch() {
+		storage.create(filmWithGenres());
+
+		verify(jdbc, times(1)).batchUpdate(anyString(), anyList());
+		verify(jdbc, never()).update(anyString(), any(Object[].class));
+		// вставка фильма и батч жанров; названия жанров и mpa берутся из справочников
+		assertEquals(2, mockingDetails(jdbc).getInvocations().size());
+	}
+
+	@Test
+	public void update_manyGenres_shouldInsertGenresInOneBatch() {
+		Film film = filmWithGenres();
+		film.setId(1);
+		when(jdbc.update(anyString(), any(Object[].class))).thenReturn(1);
+		stubFilmState(List.of());
+
+		Film updated = storage.update(film);
+
+		verify(jdbc, times(1)).batchUpdate(anyString(), anyList());
+		// update фильма, чтение текущих жанров и батч новых жанров; фильм не перечитывается
+		assertEquals(3, mockingDetails(jdbc).getInvocations().size());
+		assertEquals(GENRES_COUNT, updated.getGenres().size());
+		assertEquals(film.getVersion() + 1, updated.getVersion());
+	}
+
+	@Test
+	public void update_sameGenres_shouldNotTouchGenres() {
+		Film film = filmWithGenres();
+		film.setId(1);
+		when(jdbc.update(anyString(), any(Object[].class))).thenReturn(1);
+		stubFilmState(List.of(1, 2, 3, 4, 5, 6));
+
+		Film updated = storage.update(film);
+
+		verify(jdbc, never()).batchUpdate(anyString(), anyList());
+		assertEquals(2, mockingDetails(jdbc).getInvocations().size());
+		assertEquals(7, updated.getLikeCount());
+	}
+
+	@Test
+	public void update_changedGenres_shouldApplyOnlyDiff() {
+		Film film = filmWithGenres();
+		film.setId(1);
+		when(jdbc.update(anyString(), any(Object[].class))).thenReturn(1);
+		stubFilmState(List.of(1, 2, 3, 4, 5, 6, 7, 8));
+
+		film.setGenres(film.getGenres().subList(0, 5));
+		storage.update(film);
+
+		// удаляются только жанры 6, 7 и 8, вставлять нечего
+		verify(jdbc).batchUpdate(startsWith("DELETE"), argThat((List<Object[]> args) -> args.size() == 3));
+		verify(jdbc, times(1)).batchUpdate(anyString(), anyList());
+	}
+
+	@Test
+	public void update_staleVersionOfExistingFilm_shouldConflict() {
+		Film film = filmWithGenres();
+		film.setId(1);
+		film.setVersion(3);
+		when(jdbc.update(anyString(), any(Object[].class))).thenReturn(0);
+		when(jdbc.queryForObject(anyString(), eq(Long.class), eq(1L))).thenReturn(1L);
+
+		assertThrows(OptimisticLockException.class, () -> storage.update(film));
+		verify(jdbc, never()).batchUpdate(anyString(), anyList());
+	}
+
+	@Test
+	public void update_missingFilm_shouldBeNotFound() {
+		Film film = filmWithGenres();
+		film.setId(1);
+		film.setVersion(3);
+		when(jdbc.update(anyString(), any(Object[].class))).thenReturn(0);
+		when(jdbc.queryForObject(anyString(), eq(Long.class), eq(1L))).thenReturn(0L);
+
+		assertThrows(NotFoundException.class, () -> storage.update(film));
+		verify(jdbc, never()).batchUpdate(anyString(), anyList());
+	}
+
+	/**
+	 * Подменяет чтение текущего состояния фильма: по строке на жанр, у всех строк рейтинг 1 и 7 лайков.
+	 */
+	@SuppressWarnings("unchecked")
+	private void stubFilmState(List<Integer> genreIds) {
+		when(jdbc.query(anyString(), any(RowMapper.class), eq(1L))).thenAnswer(invocation -> {
+			RowMapper<Object> mapper = invocation.getArgument(1);
+			List<Object> rows = new ArrayList<>();
+			for (int i = 0; i < Math.max(1, genreIds.size()); i++) {
+				Integer genreId = genreIds.isEmpty() ? null : genreIds.get(i);
+				ResultSet resultSet = mock(ResultSet.class);
+				when(resultSet.getInt("mpa_rating_id")).thenReturn(1);
+				when(resultSet.getLong("like_count")).thenReturn(7L);
+				when(resultSet.getInt("genre_id")).thenReturn(genreId == null ? 0 : genreId);
+				// wasNull вызывается после рейтинга и после жанра
+				when(resultSet.wasNull()).thenReturn(false, genreId == null);
+				rows.add(mapper.mapRow(resultSet, i));
+			}
+			return rows;
+		});
+	}
+
+	private Film filmWithGenres() {
+		Film film = new Film();
+		film.setName("name");
+		film.setDescription("description");
+		film.setReleaseDate(LocalDate.of(2000, 1, 1));
+		film.setDuration(100);
+		film.setGenres(IntStream.rangeClosed(1, GENRES_COUNT).mapToObj(id -> {
+			Genre genre = new Genre();
+			genre.setId(id);
+			return genre;
+		}).toList());
+		return film;
+	}
+}
@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InMemoryPersistenceTest {
+	@TempDir
+	Path directory;
+
+	@Test
+	public void recover_afterSnapshotAndJournalTail_shouldRestoreState() throws Exception {
+		Stores stores = open();
+		Film first = stores.films.create(film("Первый"));
+		Film second = stores.films.create(film("Второй"));
+		User alice = stores.users.create(user("alice"));
+		User bob = stores.users.create(user("bob"));
+		stores.films.addLike(first.getId(), alice.getId());
+		stores.films.addLike(first.getId(), bob.getId());
+		stores.users.addFriend(alice.getId(), bob.getId());
+		stores.persistence.snapshot();
+
+		stores.films.removeLike(first.getId(), alice.getId());
+		stores.films.addLike(second.getId(), alice.getId());
+		second.setName("Второй, исправленный");
+		stores.films.update(second);
+		stores.films.delete(first.getId());
+		stores.users.removeFriend(alice.getId(), bob.getId());
+		stores.users.addFriend(bob.getId(), alice.getId());
+		stores.journal.close();
+
+		Stores recovered = open();
+		assertThrows(RuntimeException.class, () -> recovered.films.getFilm(first.getId()));
+		Film restored = recovered.films.getFilm(second.getId());
+		assertEquals("Второй, исправленный", restored.getName());
+		assertEquals(1, restored.getLikeCount());
+		assertEquals(List.of(alice.getId()), recovered.films.getUsersWhoLiked(second.getId()).stream().boxed().toList());
+		assertEquals(List.of(2), restored.getGenres().stream().map(Genre::getId).toList());
+		assertEquals(List.of(), recovered.users.getUser(alice.getId()).getFriends().stream().boxed().toList());
+		assertEquals(List.of(alice.getId()), recovered.users.getUser(bob.getId()).getFriends().stream().boxed().toList());
+		assertEquals(second.getId() + 1, recovered.films.create(film("Третий")).getId());
+		recovered.journal.close();
+	}
+
+	@Test
+	public void recover_afterDeletingHighestIdBeforeSnapshot_shouldNotReuseId() throws Exception {
+		Stores stores = open();
+		stores.films.create(film("Первый"));
+		Film second = stores.films.create(film("Второй"));
+		User alice = stores.users.create(user("alice"));
+		User bob = stores.users.create(user("bob"));
+		stores.films.delete(second.getId());
+		stores.users.delete(bob.getId());
+		stores.persistence.snapshot();
+		stores.journal.close();
+
+		Stores recovered = open();
+		assertEquals(second.getId() + 1, recovered.films.create(film("Третий")).getId());
+		assertEquals(bob.getId() + 1, recovered.users.create(user("carol")).getId());
+		assertEquals(alice.getId(), recovered.users.getUser(alice.getId()).getId());
+		recovered.journal.close();
+	}
+
+	@Test
+	public void recover_withTornJournalTail_shouldKeepCompleteRecords() throws Exception {
+		Stores stores = open();
+		Film film = stores.films.create(film("Фильм"));
+		stores.films.addLike(film.getId(), 1);
+		stores.journal.close();
+		try (Stream<Path> files = Files.list(directory)) {
+			Path segment = files.filter(path -> path.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+			Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+		}
+
+		Stores recovered = open();
+		assertEquals(1, recovered.films.getFilm(film.getId()).getLikeCount());
+		recovered.films.addLike(film.getId(), 2);
+		recovered.journal.close();
+
+		Stores reopened = open();
+		assertEquals(2, reopened.films.getFilm(film.getId()).getLikeCount());
+		reopened.journal.close();
+	}
+
+	@Test
+	public void recover_afterCrashBeforeFirstFlushOfNewSegment_shouldNotLoseLaterRecords() throws Exception {
+		Stores stores = open();
+		Film film = stores.films.create(film("Фильм"));
+		stores.persistence.snapshot();
+		stores.journal.close();
+		// после ротации сегмент пуст; сбой на первой пачке оставляет в нем только оборванную запись
+		try (Stream<Path> files = Files.list(directory)) {
+			Path segment = files.filter(path -> path.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+			assertEquals(0, Files.size(segment));
+			Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+		}
+
+		Stores recovered = open();
+		recovered.films.addLike(film.getId(), 1);
+		recovered.journal.close();
+
+		Stores reopened = open();
+		assertEquals(1, reopened.films.getFilm(film.getId()).getLikeCount());
+		reopened.journal.close();
+	}
+
+	private Stores open() throws Exception {
+		StorageJournal journal = new StorageJournal(true, directory, false, 16);
+		InMemoryFilmStorage films = new InMemoryFilmStorage(journal);
+		InMemoryUserStorage users = new InMemoryUserStorage(journal);
+		InMemoryPersistence persistence = new InMemoryPersistence(journal, films, users);
+		persistence.recover();
+		return new Stores(journal, films, users, persistence);
+	}
+
+	private static Film film(String name) {
+		Film film = new Film();
+		film.setName(name);
+		film.setDescription("Описание");
+		film.setReleaseDate(LocalDate.of(2000, 1, 1));
+		film.setDuration(100);
+		MpaRating mpaRating = new MpaRating();
+		mpaRating.setId(1);
+		mpaRating.setName("G");
+		film.setMpaRating(mpaRating);
+		Genre genre = new Genre();
+		genre.setId(2);
+		genre.setName("Драма");
+		film.setGenres(List.of(genre));
+		return film;
+	}
+
+	private static User user(String login) {
+		User user = new User();
+		user.setLogin(login);
+		user.setEmail(login + "@mail.ru");
+		user.setBirthday(LocalDate.of(1990, 1, 1));
+		return user;
+	}
+
+	private record Stores(StorageJournal journal, InMemoryFilmStorage films, InMemoryUserStorage users,
+						  InMemoryPersistence persistence) {
+	}
+}
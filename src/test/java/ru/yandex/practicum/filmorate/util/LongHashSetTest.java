@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongHashSetTest {
+	private static final int SETS = 10_000;
+	private static final int VALUES_PER_SET = 100;
+
+	@Test
+	public void addRemove_randomOperations_shouldBehaveLikeHashSet() {
+		Random random = new Random(42);
+		LongHashSet set = new LongHashSet();
+		Set<Long> expected = new HashSet<>();
+
+		for (int i = 0; i < 200_000; i++) {
+			long value = random.nextInt(3000) - 10;
+			if (random.nextBoolean()) {
+				assertEquals(expected.add(value), set.add(value));
+			} else {
+				assertEquals(expected.remove(value), set.remove(value));
+			}
+			assertEquals(expected.size(), set.size());
+		}
+		for (long value = -10; value < 3000; value++) {
+			assertEquals(expected.contains(value), set.contains(value));
+		}
+		assertEquals(expected.hashCode(), set.hashCode());
+	}
+
+	@Test
+	public void zero_shouldBeStoredLikeAnyOtherValue() {
+		LongHashSet set = new LongHashSet();
+
+		assertTrue(set.add(0));
+		assertFalse(set.add(0));
+		assertTrue(set.contains(0));
+		assertEquals(1, set.size());
+		assertTrue(set.remove(0));
+		assertTrue(set.isEmpty());
+	}
+
+	@Test
+	public void intersect_shouldReturnCommonValues() {
+		LongHashSet intersection = LongHashSet.of(1, 2, 3, 4).intersect(LongHashSet.of(3, 4, 5));
+
+		assertArrayEquals(new long[]{3, 4}, intersection.stream().sorted().toArray());
+	}
+
+	/**
+	 * Замер занятой кучи: SETS множеств по VALUES_PER_SET значений в HashSet&lt;Long&gt; и в LongHashSet.
+	 * Куча меряется через MemoryMXBean после сборки мусора, пока множества еще достижимы.
+	 * Запускается только по -Dfilmorate.benchmark=true.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "filmorate.benchmark", matches = "true")
+	public void memory_benchmark_retainedHeapComparedToHashSet() {
+		long[][] values = new long[SETS][VALUES_PER_SET];
+		Random random = new Random(42);
+		for (long[] row : values) {
+			// значения вне кэша Long.valueOf, как настоящие id
+			Arrays.setAll(row, i -> 1_000_000 + random.nextInt(1_000_000_000));
+		}
+
+		long before = usedHeapAfterGc();
+		List<Set<Long>> boxed = new ArrayList<>(SETS);
+		for (long[] row : values) {
+			Set<Long> set = new HashSet<>();
+			Arrays.stream(row).forEach(set::add);
+			boxed.add(set);
+		}
+		long boxedBytes = usedHeapAfterGc() - before;
+		int boxedSize = boxed.stream().mapToInt(Set::size).sum();
+		boxed = null;
+
+		before = usedHeapAfterGc();
+		List<LongHashSet> primitive = new ArrayList<>(SETS);
+		for (long[] row : values) {
+			primitive.add(LongHashSet.of(row));
+		}
+		long primitiveBytes = usedHeapAfterGc() - before;
+		int primitiveSize = primitive.stream().mapToInt(LongHashSet::size).sum();
+
+		System.out.printf("%d множеств по %d значений: HashSet<Long> %.1f байт/значение, LongHashSet %.1f байт/значение%n",
+				SETS, VALUES_PER_SET, boxedBytes / (double) boxedSize, primitiveBytes / (double) primitiveSize);
+		assertEquals(boxedSize, primitiveSize);
+		assertTrue(primitiveBytes < boxedBytes);
+	}
+
+	private static long usedHeapAfterGc() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
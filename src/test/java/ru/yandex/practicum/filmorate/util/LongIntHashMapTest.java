@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongIntHashMapTest {
+
+	@Test
+	public void addTo_randomOperations_shouldBehaveLikeHashMap() {
+		Random random = new Random(42);
+		LongIntHashMap map = new LongIntHashMap();
+		Map<Long, Integer> expected = new HashMap<>();
+
+		for (int i = 0; i < 200_000; i++) {
+			long key = random.nextInt(3000) - 10;
+			int delta = random.nextInt(5) + 1;
+			assertEquals((int) expected.merge(key, delta, Integer::sum), map.addTo(key, delta));
+			assertEquals(expected.size(), map.size());
+		}
+		for (long key = -10; key < 3000; key++) {
+			assertEquals(expected.containsKey(key), map.containsKey(key));
+			assertEquals((int) expected.getOrDefault(key, 0), map.get(key));
+		}
+		Map<Long, Integer> iterated = new HashMap<>();
+		map.forEach(iterated::put);
+		assertEquals(expected, iterated);
+	}
+
+	@Test
+	public void zero_shouldBeStoredLikeAnyOtherKey() {
+		LongIntHashMap map = new LongIntHashMap();
+
+		assertFalse(map.containsKey(0));
+		map.addTo(0, 2);
+		map.addTo(0, 3);
+
+		assertTrue(map.containsKey(0));
+		assertEquals(5, map.get(0));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	public void addAll_shouldSumValuesWithSameKeys() {
+		LongIntHashMap map = new LongIntHashMap();
+		map.addTo(1, 1);
+		map.addTo(2, 2);
+		LongIntHashMap other = new LongIntHashMap();
+		other.addTo(2, 3);
+		other.addTo(3, 4);
+
+		map.addAll(other);
+
+		assertEquals(1, map.get(1));
+		assertEquals(5, map.get(2));
+		assertEquals(4, map.get(3));
+		assertEquals(3, map.size());
+	}
+}